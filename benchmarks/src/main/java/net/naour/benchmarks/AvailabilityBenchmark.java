@@ -0,0 +1,57 @@
+package net.naour.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RentalService.isCarAvailable : requête JPQL findConflictingRentals contre index en mémoire.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AvailabilityBenchmark {
+
+    @State(Scope.Thread)
+    public static class Periodes {
+        static final int TAILLE = 1024;
+
+        final long[] carIds = new long[TAILLE];
+        final LocalDate[] debuts = new LocalDate[TAILLE];
+        final LocalDate[] fins = new LocalDate[TAILLE];
+        int courant;
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(42);
+            int horizon = RentalServiceState.RESERVATIONS_PAR_VOITURE * 10;
+            for (int i = 0; i < TAILLE; i++) {
+                carIds[i] = 1 + random.nextInt(RentalServiceState.NOMBRE_VOITURES);
+                debuts[i] = RentalServiceState.DEBUT.plusDays(random.nextInt(horizon));
+                fins[i] = debuts[i].plusDays(1 + random.nextInt(7));
+            }
+        }
+
+        int next() {
+            return courant++ & (TAILLE - 1);
+        }
+    }
+
+    @Benchmark
+    public boolean repository(RentalServiceState state, Periodes periodes) {
+        int i = periodes.next();
+        return state.rentalRepository
+                .findConflictingRentals(periodes.carIds[i], periodes.debuts[i], periodes.fins[i])
+                .isEmpty();
+    }
+
+    @Benchmark
+    public boolean inMemoryIndex(RentalServiceState state, Periodes periodes) {
+        int i = periodes.next();
+        return state.rentalService.isCarAvailable(periodes.carIds[i], periodes.debuts[i], periodes.fins[i]);
+    }
+}
@@ -0,0 +1,54 @@
+package net.naour.benchmarks;
+
+import net.naour.rentalservice.entities.Rental;
+import net.naour.rentalservice.entities.StatutReservation;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sérialisation JSON d'une liste de Rental, telle que renvoyée par les endpoints de liste.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RentalJsonBenchmark {
+
+    @Param({"100", "10000"})
+    public int taille;
+
+    private List<Rental> rentals;
+    private JsonMapper jsonMapper;
+
+    @Setup
+    public void setUp() {
+        jsonMapper = JsonMapper.builder().build();
+        rentals = new ArrayList<>(taille);
+        LocalDate debut = LocalDate.of(2030, 1, 1);
+        for (int i = 0; i < taille; i++) {
+            rentals.add(Rental.builder()
+                    .id((long) i + 1)
+                    .clientId((long) i % 200)
+                    .carId((long) i % 500)
+                    .startDate(debut.plusDays(i % 365))
+                    .endDate(debut.plusDays(i % 365 + 5))
+                    .montantTotal(199.95)
+                    .statut(StatutReservation.CONFIRMEE)
+                    .createdAt(LocalDateTime.of(2029, 12, 1, 10, 0))
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return jsonMapper.writeValueAsBytes(rentals);
+    }
+}
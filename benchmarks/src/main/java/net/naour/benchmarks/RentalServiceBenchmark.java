@@ -0,0 +1,36 @@
+package net.naour.benchmarks;
+
+import net.naour.rentalservice.dto.RentalDTO;
+import net.naour.rentalservice.services.RentalService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calcul du montant de createRental et construction du RentalDTO de getReservationDetails.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RentalServiceBenchmark {
+
+    @State(Scope.Thread)
+    public static class Entrees {
+        long nombreJours = 7;
+        double pricePerDay = 39.99;
+        int courant;
+    }
+
+    @Benchmark
+    public double calculerMontant(Entrees entrees) {
+        return RentalService.calculerMontant(entrees.nombreJours, entrees.pricePerDay);
+    }
+
+    @Benchmark
+    public RentalDTO reservationDetails(RentalServiceState state, Entrees entrees) {
+        long id = state.rentalIds[(entrees.courant++ & Integer.MAX_VALUE) % state.rentalIds.length];
+        return state.rentalService.getReservationDetails(id);
+    }
+}
@@ -0,0 +1,84 @@
+package net.naour.benchmarks;
+
+import net.naour.rentalservice.RentalServiceApplication;
+import net.naour.rentalservice.entities.Rental;
+import net.naour.rentalservice.entities.StatutReservation;
+import net.naour.rentalservice.repository.RentalRepository;
+import net.naour.rentalservice.services.AvailabilityIndex;
+import net.naour.rentalservice.services.RentalService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * rental-service démarré sans serveur web, sur H2 en mémoire, avec car-service et client-service simulés.
+ * La base contient NOMBRE_VOITURES x RESERVATIONS_PAR_VOITURE réservations espacées de 10 jours.
+ */
+@State(Scope.Benchmark)
+public class RentalServiceState {
+    static final int NOMBRE_VOITURES = 500;
+    static final int RESERVATIONS_PAR_VOITURE = 20;
+    static final LocalDate DEBUT = LocalDate.of(2030, 1, 1);
+
+    private static final StatutReservation[] STATUTS = {
+            StatutReservation.EN_ATTENTE, StatutReservation.CONFIRMEE, StatutReservation.TERMINEE
+    };
+
+    StubRemoteServices stubs;
+    ConfigurableApplicationContext context;
+    RentalService rentalService;
+    RentalRepository rentalRepository;
+    long[] rentalIds;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        stubs = new StubRemoteServices();
+        context = new SpringApplicationBuilder(RentalServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        "eureka.client.enabled=false",
+                        "spring.cloud.discovery.enabled=false",
+                        "spring.jpa.show-sql=false",
+                        "spring.jpa.properties.hibernate.format_sql=false",
+                        "car.service.url=" + stubs.url(),
+                        "client.service.url=" + stubs.url())
+                .run();
+        rentalService = context.getBean(RentalService.class);
+        rentalRepository = context.getBean(RentalRepository.class);
+
+        List<Rental> rentals = new ArrayList<>(NOMBRE_VOITURES * RESERVATIONS_PAR_VOITURE);
+        for (long carId = 1; carId <= NOMBRE_VOITURES; carId++) {
+            for (int k = 0; k < RESERVATIONS_PAR_VOITURE; k++) {
+                LocalDate debut = DEBUT.plusDays(k * 10L);
+                rentals.add(Rental.builder()
+                        .clientId(1 + (carId * k) % 200)
+                        .carId(carId)
+                        .startDate(debut)
+                        .endDate(debut.plusDays(5))
+                        .montantTotal(5 * 40.0)
+                        .statut(STATUTS[k % STATUTS.length])
+                        .build());
+            }
+        }
+        rentalIds = rentalRepository.saveAll(rentals).stream().mapToLong(Rental::getId).toArray();
+        context.getBean(AvailabilityIndex.class).rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+        stubs.close();
+    }
+}
@@ -0,0 +1,104 @@
+package net.naour.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.naour.rentalservice.dto.Car;
+import net.naour.rentalservice.dto.Client;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.function.LongFunction;
+
+/**
+ * Faux car-service et client-service servis en local, pour que les benchmarks
+ * passent par les vrais clients Feign sans dépendre des autres services.
+ */
+final class StubRemoteServices implements AutoCloseable {
+    private final HttpServer server;
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    StubRemoteServices() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/cars", exchange -> handle(exchange, StubRemoteServices::car));
+        server.createContext("/api/cars", exchange -> handle(exchange, StubRemoteServices::car));
+        server.createContext("/clients", exchange -> handle(exchange, StubRemoteServices::client));
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    // {contexte}/batch?ids=1&ids=2 ou {contexte}/{id}[/availability]
+    private void handle(HttpExchange exchange, LongFunction<Object> factory) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(exchange.getHttpContext().getPath().length());
+        String[] segments = path.split("/");
+        Object body;
+        if (segments.length > 1 && "batch".equals(segments[1])) {
+            List<Object> items = new ArrayList<>();
+            for (long id : idsParam(exchange.getRequestURI().getRawQuery())) {
+                items.add(factory.apply(id));
+            }
+            body = items;
+        } else if (segments.length > 1) {
+            body = factory.apply(Long.parseLong(segments[1]));
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] json = jsonMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private static List<Long> idsParam(String query) {
+        List<Long> ids = new ArrayList<>();
+        if (query == null) {
+            return ids;
+        }
+        for (String param : query.split("&")) {
+            if (param.startsWith("ids=")) {
+                for (String id : param.substring(4).split("%2C|,")) {
+                    if (!id.isEmpty()) {
+                        ids.add(Long.parseLong(id));
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static Car car(long id) {
+        Car car = new Car();
+        car.setId(id);
+        car.setBrand("Renault");
+        car.setModel("Clio " + id);
+        car.setImmatriculation("AB-" + id + "-CD");
+        car.setCategorie("ECONOMIQUE");
+        car.setYear(2022);
+        car.setPricePerDay(35.0 + (id % 50));
+        car.setDisponible(true);
+        return car;
+    }
+
+    private static Client client(long id) {
+        return new Client(id, "Nom" + id, "Prenom" + id, "client" + id + "@example.com",
+                "0600000000", "1 rue de la Paix", "Casablanca");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
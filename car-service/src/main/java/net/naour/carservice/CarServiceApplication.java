@@ -8,8 +8,11 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 @SpringBootApplication
 public class CarServiceApplication {
@@ -25,24 +28,32 @@ public class CarServiceApplication {
             List<String> models = List.of("Model A", "Model B", "Model C");
             List<String> categories = List.of("ECONOMIQUE", "CONFORT", "LUXE");
             Random random = new Random();
+            // immatriculation est unique : on évite les tirages en double
+            Set<Integer> immatriculations = new HashSet<>();
+            List<Car> cars = new ArrayList<>();
 
             for (String brand : brands) {
                 for (String model : models) {
                     for (String category : categories) {
-                        Car car = Car.builder()
+                        int immatriculation;
+                        do {
+                            immatriculation = 1000000 + random.nextInt(9000000); // entre 1000000 et 9999999
+                        } while (!immatriculations.add(immatriculation));
+
+                        cars.add(Car.builder()
                                 .brand(brand)
                                 .model(model)
                                 .categorie(category)
-                                .immatriculation(1000000 + random.nextInt(9000000)) // entre 1000000 et 9999999
+                                .immatriculation(immatriculation)
                                 .year(2000 + random.nextInt(24)) // random year 2000-2023
                                 .pricePerDay(50 + random.nextDouble() * 150) // prix entre 50 et 200
                                 .disponible(true)
-                                .build();
-
-                        carRepository.save(car);
+                                .build());
                     }
                 }
             }
+            // Un seul saveAll : insertions regroupées en batch JDBC
+            carRepository.saveAll(cars);
 
         };
     }
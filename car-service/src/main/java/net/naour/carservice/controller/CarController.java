@@ -1,11 +1,23 @@
 package net.naour.carservice.controller;
 
 import lombok.RequiredArgsConstructor;
+import net.naour.carservice.dto.CarChangeBatch;
+import net.naour.carservice.dto.CarSearchCriteria;
+import net.naour.carservice.dto.CarSearchResult;
+import net.naour.carservice.dto.FleetImportReport;
 import net.naour.carservice.entities.Car;
 import net.naour.carservice.repository.CarRepository;
+import net.naour.carservice.service.CarChangeFeed;
 import net.naour.carservice.service.CarService;
+import net.naour.carservice.service.FleetImportService;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.List;
 
 @RestController
@@ -15,27 +27,77 @@ import java.util.List;
 @CrossOrigin(origins = "http://localhost:5173", allowCredentials = "true")
 public class CarController {
 
+    private static final int MAX_CHANGES = 1000;
+
     private final CarService carService;
+    private final FleetImportService fleetImportService;
+    private final CarChangeFeed carChangeFeed;
 
-    public CarController(CarService carService) {
+    public CarController(CarService carService, FleetImportService fleetImportService, CarChangeFeed carChangeFeed) {
         this.carService = carService;
+        this.fleetImportService = fleetImportService;
+        this.carChangeFeed = carChangeFeed;
     }
 
+    // Lectures conditionnelles : un If-None-Match égal à la version courante du catalogue reçoit un 304
+    // sans accès aux données. La version est lue avant les données : au pire l'ETag envoyé est plus
+    // ancien que le contenu (le client relira), jamais plus récent.
     @GetMapping
-    public List<Car> getAllCars() {
+    public List<Car> getAllCars(WebRequest request) {
+        if (request.checkNotModified(carService.getCatalogEtag())) {
+            return null;
+        }
         return carService.getAllCars();
     }
 
     @GetMapping("/{id}")
-    public Car getCarById(@PathVariable Long id) {
+    public Car getCarById(@PathVariable Long id, WebRequest request) {
+        if (request.checkNotModified(carService.getCatalogEtag())) {
+            return null;
+        }
         return carService.getCarById(id).orElseThrow();
     }
 
+    // Plusieurs voitures en un seul appel : /api/cars/batch?ids=1,2,3
+    @GetMapping("/batch")
+    public List<Car> getCarsByIds(@RequestParam List<Long> ids, WebRequest request) {
+        if (request.checkNotModified(carService.getCatalogEtag())) {
+            return null;
+        }
+        return carService.getCarsByIds(ids);
+    }
+
     @GetMapping("/available")
-    public List<Car> getAvailableCars() {
+    public List<Car> getAvailableCars(WebRequest request) {
+        if (request.checkNotModified(carService.getCatalogEtag())) {
+            return null;
+        }
         return carService.getAvailableCars();
     }
 
+    // Recherche combinée : /api/cars/search?brand=BMW&categorie=LUXE&minPrice=80&disponible=true&page=0&size=20
+    @GetMapping("/search")
+    public CarSearchResult searchCars(CarSearchCriteria criteria) {
+        return carService.searchCars(criteria);
+    }
+
+    // Journal des changements (créations, disponibilité, prix, suppressions) postérieurs au curseur since :
+    // /api/cars/changes?since=42&wait=30 attend jusqu'à 30 s qu'un changement arrive (long polling).
+    // Sans since, renvoie seulement la position courante, à lire avant de charger le catalogue complet.
+    @GetMapping("/changes")
+    public DeferredResult<CarChangeBatch> getChanges(@RequestParam(required = false) Long since,
+                                                     @RequestParam(defaultValue = "500") int limit,
+                                                     @RequestParam(defaultValue = "0") long wait) {
+        if (limit < 1 || limit > MAX_CHANGES) {
+            throw new RuntimeException("limit doit être compris entre 1 et " + MAX_CHANGES);
+        }
+        if (since != null && since < 0) {
+            throw new RuntimeException("since doit être positif");
+        }
+        return carChangeFeed.poll(since != null ? since : carChangeFeed.head(), limit,
+                since != null ? Duration.ofSeconds(wait) : Duration.ZERO);
+    }
+
     @GetMapping("/category/{categorie}")
     public List<Car> getCarsByCategory(@PathVariable String categorie) {
         return carService.getCarsByCategory(categorie);
@@ -47,6 +109,18 @@ public class CarController {
         return carService.createCar(car);
     }
 
+    // Import en masse, lu au fil de l'eau : CSV avec en-tête brand,model,year,immatriculation,categorie,pricePerDay
+    // (colonne disponible facultative) ou NDJSON, une voiture par ligne. Renvoie le bilan et les lignes rejetées.
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public FleetImportReport importCsv(InputStream body) throws IOException {
+        return fleetImportService.importFleet(body, FleetImportService.Format.CSV);
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public FleetImportReport importNdjson(InputStream body) throws IOException {
+        return fleetImportService.importFleet(body, FleetImportService.Format.NDJSON);
+    }
+
     @PutMapping("/{id}")
     public Car updateCar(@PathVariable Long id ,@RequestBody Car car) {
         return carService.updateCar(id ,car);
@@ -0,0 +1,24 @@
+package net.naour.carservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.naour.carservice.entities.CarChange;
+
+import java.util.List;
+
+/**
+ * Changements postérieurs au curseur demandé. next est le since à envoyer au prochain appel ;
+ * tant que next est inférieur à head, d'autres changements sont déjà disponibles.
+ * epoch identifie la numérotation : quand il change (redémarrage, changements perdus), les curseurs
+ * précédents ne veulent plus rien dire et le consommateur doit repartir du catalogue complet.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CarChangeBatch {
+    private String epoch;
+    private long next;
+    private long head;
+    private List<CarChange> changes;
+}
@@ -0,0 +1,27 @@
+package net.naour.carservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Filtres de /api/cars/search, tous optionnels. Plusieurs valeurs d'une même facette
+ * sont combinées en OU (?brand=BMW&brand=Toyota), les facettes entre elles en ET.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CarSearchCriteria {
+    private List<String> brand;
+    private List<String> model;
+    private List<String> categorie;
+    private Integer minYear;
+    private Integer maxYear;
+    private Double minPrice;
+    private Double maxPrice;
+    private Boolean disponible;
+    private int page = 0;
+    private int size = 20;
+}
@@ -0,0 +1,24 @@
+package net.naour.carservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.naour.carservice.entities.Car;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page de résultats et nombre de voitures par valeur de facette.
+ * Le compte d'une facette applique tous les filtres sauf le sien, pour montrer les alternatives.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CarSearchResult {
+    private int total;
+    private int page;
+    private int size;
+    private List<Car> cars;
+    private Map<String, Map<String, Integer>> facets;
+}
@@ -0,0 +1,14 @@
+package net.naour.carservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Ligne rejetée par un import de flotte ; ligne est le numéro de ligne dans le corps reçu (en-tête CSV compris)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FleetImportError {
+    private long ligne;
+    private String message;
+}
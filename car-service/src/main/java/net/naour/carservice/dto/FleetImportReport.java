@@ -0,0 +1,20 @@
+package net.naour.carservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Bilan d'un import de flotte : seules les premières erreurs sont détaillées, rejetees les compte toutes
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FleetImportReport {
+    private long lignes;      // lignes non vides lues, hors en-tête CSV
+    private long importees;
+    private long rejetees;    // invalides, en double ou refusées par la base
+    private List<FleetImportError> erreurs;
+}
@@ -1,6 +1,7 @@
 package net.naour.carservice.entities;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 
 import lombok.AllArgsConstructor;
@@ -9,13 +10,17 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "cars")
+@Table(name = "cars", indexes = {
+        @Index(name = "uk_cars_immatriculation", columnList = "immatriculation", unique = true)
+})
 @Data
 @Builder @AllArgsConstructor @NoArgsConstructor
 public class Car {
 
+    // Séquence plutôt qu'IDENTITY : Hibernate peut regrouper les insertions en batch JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "car_seq")
+    @SequenceGenerator(name = "car_seq", sequenceName = "car_seq", allocationSize = 50)
     private Long id;
 
      //required
@@ -45,4 +50,9 @@ public class Car {
 
     @Column(name = "price_per_day", nullable = false)
     private Double pricePerDay;
+
+    // Version de la ligne : l'instantané de la flotte ignore une écriture plus ancienne arrivée en retard
+    @Version
+    @JsonIgnore
+    private Long version;
 }
\ No newline at end of file
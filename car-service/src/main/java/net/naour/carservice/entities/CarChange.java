@@ -0,0 +1,38 @@
+package net.naour.carservice.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Entrée du journal des changements de la flotte ; seq est attribué par CarChangeFeed, croissant et sans trou
+@Entity
+@Table(name = "car_changes")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CarChange {
+
+    @Id
+    private Long seq;
+
+    @Column(name = "car_id", nullable = false)
+    private Long carId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private CarChangeType type;
+
+    // Valeurs après le changement (null pour une suppression)
+    private Boolean disponible;
+
+    @Column(name = "price_per_day")
+    private Double pricePerDay;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
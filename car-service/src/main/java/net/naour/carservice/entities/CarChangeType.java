@@ -0,0 +1,8 @@
+package net.naour.carservice.entities;
+
+public enum CarChangeType {
+    CREATION,
+    DISPONIBILITE,
+    PRIX,
+    SUPPRESSION
+}
@@ -0,0 +1,18 @@
+package net.naour.carservice.repository;
+
+import net.naour.carservice.entities.CarChange;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import java.util.List;
+import java.util.Optional;
+
+// Journal interne, exposé uniquement par /api/cars/changes
+@RepositoryRestResource(exported = false)
+public interface CarChangeRepository extends JpaRepository<CarChange, Long> {
+
+    List<CarChange> findBySeqGreaterThanOrderBySeqAsc(Long since, Limit limit);
+
+    Optional<CarChange> findTopByOrderBySeqDesc();
+}
@@ -1,12 +1,16 @@
 package net.naour.carservice.repository;
 
+import jakarta.persistence.LockModeType;
 import net.naour.carservice.entities.Car;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import org.springframework.data.rest.core.annotation.RestResource;
 
 import java.util.List;
+import java.util.Optional;
 
 
 @RepositoryRestResource(collectionResourceRel = "cars", path = "cars")
@@ -21,5 +25,11 @@ public interface CarRepository extends JpaRepository<Car, Long> {
 
     @RestResource(path = "category", rel = "category")
     List<Car> findByCategorie(String categorie);
+
+    // Voiture verrouillée en écriture jusqu'à la fin de la transaction : les modifications passent l'une après l'autre
+    @RestResource(exported = false)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Car c WHERE c.id = :id")
+    Optional<Car> findByIdForUpdate(@Param("id") Long id);
 }
 
@@ -0,0 +1,87 @@
+package net.naour.carservice.service;
+
+import java.util.Arrays;
+
+/**
+ * Opérations sur des bitsets bruts (long[]), bit i = voiture à la position i de l'instantané.
+ * Les tableaux ne sont jamais modifiés une fois publiés dans un instantané.
+ */
+final class Bitsets {
+    private Bitsets() {
+    }
+
+    static long[] empty(int size) {
+        return new long[words(size)];
+    }
+
+    static long[] full(int size) {
+        long[] bits = new long[words(size)];
+        Arrays.fill(bits, -1L);
+        if ((size & 63) != 0) {
+            bits[bits.length - 1] = (1L << size) - 1;
+        }
+        return bits;
+    }
+
+    static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    static void andInto(long[] target, long[] bits) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] &= bits[i];
+        }
+    }
+
+    static void orInto(long[] target, long[] bits) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] |= bits[i];
+        }
+    }
+
+    static long[] andNot(long[] a, long[] b) {
+        long[] result = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] & ~b[i];
+        }
+        return result;
+    }
+
+    static int cardinality(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // Cardinalité de a ET b, sans allouer l'intersection
+    static int andCardinality(long[] a, long[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            count += Long.bitCount(a[i] & b[i]);
+        }
+        return count;
+    }
+
+    static int nextSetBit(long[] bits, int from) {
+        int wordIndex = from >>> 6;
+        if (wordIndex >= bits.length) {
+            return -1;
+        }
+        long word = bits[wordIndex] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++wordIndex == bits.length) {
+                return -1;
+            }
+            word = bits[wordIndex];
+        }
+    }
+
+    private static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+}
@@ -0,0 +1,211 @@
+package net.naour.carservice.service;
+
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import net.naour.carservice.dto.CarChangeBatch;
+import net.naour.carservice.entities.CarChange;
+import net.naour.carservice.repository.CarChangeRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Journal des changements de la flotte (créations, disponibilité, prix, suppressions) numérotés par une
+ * séquence croissante et sans trou. Les derniers changements restent dans un tampon circulaire en mémoire ;
+ * la table car_changes garde l'historique pour les consommateurs en retard. Un consommateur maintient sa
+ * copie du catalogue en rejouant les changements postérieurs à son curseur, au lieu de tout relire.
+ * Un seq n'est attribué et publié qu'une fois le changement enregistré : un échec d'écriture ne laisse ni trou
+ * ni numéro réutilisé après un redémarrage, les changements restent en attente et sont réessayés à l'écriture suivante.
+ * Chaque réponse porte l'époque du journal : elle change à chaque démarrage (la base H2 en mémoire repart à zéro)
+ * et quand des changements en attente sont abandonnés, pour que les consommateurs repartent du catalogue complet.
+ */
+@Component
+@Slf4j
+public class CarChangeFeed {
+    private final CarChangeRepository carChangeRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration maxWait;
+
+    // ring[seq % capacité] contient les changements oldest..head ; protégés par le moniteur de l'instance
+    private final CarChange[] ring;
+    private long head;
+    private long oldest = 1;
+    private volatile String epoch = nouvelleEpoque();
+    // Changements dans l'ordre des publications de l'instantané, pas encore enregistrés
+    private final Queue<List<CarChange>> pending = new ConcurrentLinkedQueue<>();
+    // Un seul enregistrement à la fois ; nonEnregistres (changements d'un essai échoué, au plus la capacité
+    // du tampon) est protégé par ce verrou
+    private final ReentrantLock ecriture = new ReentrantLock();
+    private final List<CarChange> nonEnregistres = new ArrayList<>();
+    // Appels en attente (long polling) d'un changement postérieur à leur curseur
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+
+    public CarChangeFeed(CarChangeRepository carChangeRepository,
+                         EntityManager entityManager,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${car.changes.buffer-size:10000}") int bufferSize,
+                         @Value("${car.changes.max-wait:30s}") Duration maxWait) {
+        this.carChangeRepository = carChangeRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.maxWait = maxWait;
+        this.ring = new CarChange[bufferSize];
+    }
+
+    // Reprend la numérotation et le tampon depuis la table au démarrage
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        head = carChangeRepository.findTopByOrderBySeqDesc().map(CarChange::getSeq).orElse(0L);
+        List<CarChange> recents = carChangeRepository.findBySeqGreaterThanOrderBySeqAsc(
+                Math.max(0, head - ring.length), Limit.of(ring.length));
+        for (CarChange change : recents) {
+            ring[slot(change.getSeq())] = change;
+        }
+        oldest = recents.isEmpty() ? head + 1 : recents.getFirst().getSeq();
+        log.info("Journal des changements chargé: seq courant {}, {} entrée(s) en mémoire", head, recents.size());
+    }
+
+    public synchronized long head() {
+        return head;
+    }
+
+    public String epoch() {
+        return epoch;
+    }
+
+    // Appelé par FleetSnapshot sous son verrou : fixe l'ordre des changements, sans I/O
+    void enqueue(List<CarChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        changes.forEach(change -> change.setCreatedAt(now));
+        pending.add(changes);
+    }
+
+    // Appelé par FleetSnapshot hors de son verrou : enregistre les changements en attente, puis les publie
+    void flush() {
+        ecriture.lock();
+        try {
+            for (List<CarChange> changes = pending.poll(); changes != null; changes = pending.poll()) {
+                nonEnregistres.addAll(changes);
+            }
+            if (nonEnregistres.size() > ring.length) {
+                // La base refuse les écritures depuis trop longtemps : les changements sont abandonnés et
+                // l'époque change, les consommateurs relisent le catalogue au lieu de manquer ces changements
+                log.error("{} changement(s) non enregistré(s) abandonnés, nouvelle époque du journal",
+                        nonEnregistres.size());
+                nonEnregistres.clear();
+                synchronized (this) {
+                    epoch = nouvelleEpoque();
+                }
+                return;
+            }
+            if (nonEnregistres.isEmpty()) {
+                return;
+            }
+            // head n'avance que sous ce verrou : les seq suivent le dernier changement enregistré
+            long seq = head();
+            for (CarChange change : nonEnregistres) {
+                change.setSeq(++seq);
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> nonEnregistres.forEach(entityManager::persist));
+            } catch (RuntimeException e) {
+                log.error("{} changement(s) non enregistré(s), nouvel essai à la prochaine écriture: {}",
+                        nonEnregistres.size(), e.getMessage());
+                return;
+            }
+            synchronized (this) {
+                for (CarChange change : nonEnregistres) {
+                    ring[slot(change.getSeq())] = change;
+                }
+                head = seq;
+                oldest = Math.max(oldest, head - ring.length + 1);
+            }
+            nonEnregistres.clear();
+        } finally {
+            ecriture.unlock();
+        }
+
+        for (Waiter waiter : waiters) {
+            if (waiters.remove(waiter)) {
+                waiter.result().setResult(read(waiter.since(), waiter.limit()));
+            }
+        }
+    }
+
+    // Au plus limit changements de seq > since, depuis le tampon ou, pour un curseur plus ancien, depuis la table
+    public CarChangeBatch read(long since, int limit) {
+        long current;
+        String epoque;
+        synchronized (this) {
+            current = head;
+            epoque = epoch;
+            if (since >= head) {
+                // since > head : journal réinitialisé, next revient à head et le consommateur doit tout relire
+                return new CarChangeBatch(epoch, head, head, List.of());
+            }
+            if (since + 1 >= oldest) {
+                int n = (int) Math.min(limit, head - since);
+                List<CarChange> changes = new ArrayList<>(n);
+                for (long seq = since + 1; seq <= since + n; seq++) {
+                    changes.add(ring[slot(seq)]);
+                }
+                return new CarChangeBatch(epoch, since + n, head, changes);
+            }
+        }
+        List<CarChange> changes = carChangeRepository.findBySeqGreaterThanOrderBySeqAsc(since, Limit.of(limit));
+        long next = changes.isEmpty() ? since : changes.getLast().getSeq();
+        return new CarChangeBatch(epoque, next, current, changes);
+    }
+
+    // Long polling : répond dès qu'un changement postérieur à since existe, ou à l'expiration de l'attente
+    public DeferredResult<CarChangeBatch> poll(long since, int limit, Duration wait) {
+        Duration attente = wait.compareTo(maxWait) > 0 ? maxWait : wait;
+        CarChangeBatch batch = read(since, limit);
+        if (!batch.getChanges().isEmpty() || attente.isZero() || attente.isNegative() || since > batch.getHead()) {
+            DeferredResult<CarChangeBatch> result = new DeferredResult<>();
+            result.setResult(batch);
+            return result;
+        }
+
+        DeferredResult<CarChangeBatch> result = new DeferredResult<>(attente.toMillis());
+        Waiter waiter = new Waiter(since, limit, result);
+        result.onTimeout(() -> result.setResult(read(since, limit)));
+        result.onCompletion(() -> waiters.remove(waiter));
+        waiters.add(waiter);
+        // Un changement a pu être publié entre la lecture et l'inscription
+        if (head() > since && waiters.remove(waiter)) {
+            result.setResult(read(since, limit));
+        }
+        return result;
+    }
+
+    private static String nouvelleEpoque() {
+        return UUID.randomUUID().toString();
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % ring.length);
+    }
+
+    private record Waiter(long since, int limit, DeferredResult<CarChangeBatch> result) {
+    }
+}
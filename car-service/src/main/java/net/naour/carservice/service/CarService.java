@@ -1,9 +1,13 @@
 package net.naour.carservice.service;
 
+import net.naour.carservice.dto.CarSearchCriteria;
+import net.naour.carservice.dto.CarSearchResult;
 import net.naour.carservice.entities.Car;
 import net.naour.carservice.repository.CarRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,17 +15,32 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class CarService {
     private final CarRepository carRepository;
+    private final FleetSnapshot fleetSnapshot;
+    private final TransactionTemplate transactionTemplate;
 
+    // Lectures servies par l'instantané en mémoire, sans requête en base
     public List<Car> getAllCars() {
-        return carRepository.findAll();
+        return fleetSnapshot.all();
     }
 
     public Optional<Car> getCarById(Long id) {
-        return carRepository.findById(id);
+        return fleetSnapshot.get(id);
+    }
+
+    public List<Car> getCarsByIds(Collection<Long> ids) {
+        return fleetSnapshot.get(ids);
+    }
+
+    public String getCatalogEtag() {
+        return fleetSnapshot.etag();
     }
 
     public List<Car> getAvailableCars() {
-        return carRepository.findByDisponibleTrue();
+        return fleetSnapshot.available();
+    }
+
+    public CarSearchResult searchCars(CarSearchCriteria criteria) {
+        return fleetSnapshot.search(criteria);
     }
 
     public List<Car> getCarsByCategory(String categorie) {
@@ -30,33 +49,44 @@ public class CarService {
 
     public Car createCar(Car car) {
         car.setDisponible(true);
-        return carRepository.save(car);
+        Car saved = carRepository.save(car);
+        fleetSnapshot.upsert(saved);
+        return saved;
     }
 
+    // L'instantané est mis à jour après le commit ; la version de la ligne y ordonne les écritures concurrentes
     public Car updateCar(Long id, Car carDetails) {
-        Car car = carRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Voiture non trouvée"));
-
-        car.setBrand(carDetails.getBrand());
-        car.setModel(carDetails.getModel());
-        car.setImmatriculation(carDetails.getImmatriculation());
-        car.setCategorie(carDetails.getCategorie());
-        car.setYear(carDetails.getYear());
-        car.setPricePerDay(carDetails.getPricePerDay());
-        car.setDisponible(carDetails.isDisponible());
+        Car saved = transactionTemplate.execute(status -> {
+            Car car = carRepository.findByIdForUpdate(id)
+                    .orElseThrow(() -> new RuntimeException("Voiture non trouvée"));
 
+            car.setBrand(carDetails.getBrand());
+            car.setModel(carDetails.getModel());
+            car.setImmatriculation(carDetails.getImmatriculation());
+            car.setCategorie(carDetails.getCategorie());
+            car.setYear(carDetails.getYear());
+            car.setPricePerDay(carDetails.getPricePerDay());
+            car.setDisponible(carDetails.isDisponible());
 
-        return carRepository.save(car);
+            return carRepository.save(car);
+        });
+        fleetSnapshot.upsert(saved);
+        return saved;
     }
 
     public void deleteCar(Long id) {
         carRepository.deleteById(id);
+        fleetSnapshot.remove(id);
     }
 
     public Car updateAvailability(Long id, boolean disponible) {
-        Car car = carRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Voiture non trouvée"));
-        car.setDisponible(disponible);
-        return carRepository.save(car);
+        Car saved = transactionTemplate.execute(status -> {
+            Car car = carRepository.findByIdForUpdate(id)
+                    .orElseThrow(() -> new RuntimeException("Voiture non trouvée"));
+            car.setDisponible(disponible);
+            return carRepository.save(car);
+        });
+        fleetSnapshot.upsert(saved);
+        return saved;
     }
 }
\ No newline at end of file
@@ -0,0 +1,240 @@
+package net.naour.carservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import net.naour.carservice.dto.FleetImportError;
+import net.naour.carservice.dto.FleetImportReport;
+import net.naour.carservice.entities.Car;
+import net.naour.carservice.repository.CarRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Year;
+import java.util.*;
+
+/**
+ * Import en masse de la flotte depuis un corps CSV ou NDJSON, lu ligne par ligne sans le charger en mémoire.
+ * Les lignes valides sont insérées par lots (batch JDBC, ids alloués par la séquence), chaque lot dans sa
+ * propre transaction. Une ligne invalide ou dont l'immatriculation existe déjà est signalée dans le bilan
+ * sans interrompre l'import.
+ */
+@Service
+@Slf4j
+public class FleetImportService {
+    public enum Format { CSV, NDJSON }
+
+    private static final List<String> COLONNES_OBLIGATOIRES =
+            List.of("brand", "model", "year", "immatriculation", "categorie", "priceperday");
+
+    private final CarRepository carRepository;
+    private final FleetSnapshot fleetSnapshot;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxReportedErrors;
+
+    public FleetImportService(CarRepository carRepository,
+                              FleetSnapshot fleetSnapshot,
+                              TransactionTemplate transactionTemplate,
+                              ObjectMapper objectMapper,
+                              @Value("${car.import.batch-size:500}") int batchSize,
+                              @Value("${car.import.max-reported-errors:1000}") int maxReportedErrors) {
+        this.carRepository = carRepository;
+        this.fleetSnapshot = fleetSnapshot;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    public FleetImportReport importFleet(InputStream body, Format format) throws IOException {
+        Bilan bilan = new Bilan();
+        // Immatriculations déjà connues : l'instantané évite une requête par ligne
+        Set<Integer> immatriculations = new HashSet<>();
+        for (Car car : fleetSnapshot.all()) {
+            immatriculations.add(car.getImmatriculation());
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        Map<String, Integer> colonnes = null;
+        List<Ligne> lot = new ArrayList<>(batchSize);
+        long numero = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            numero++;
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == Format.CSV && colonnes == null) {
+                colonnes = enTete(line);
+                continue;
+            }
+            bilan.lignes++;
+
+            Car car;
+            try {
+                car = format == Format.CSV ? depuisCsv(line, colonnes) : depuisJson(line);
+            } catch (RuntimeException e) {
+                bilan.rejeter(numero, "Ligne illisible: " + e.getMessage());
+                continue;
+            }
+            String erreur = valider(car);
+            if (erreur != null) {
+                bilan.rejeter(numero, erreur);
+                continue;
+            }
+            if (!immatriculations.add(car.getImmatriculation())) {
+                bilan.rejeter(numero, "Immatriculation en double: " + car.getImmatriculation());
+                continue;
+            }
+
+            lot.add(new Ligne(numero, car));
+            if (lot.size() >= batchSize) {
+                inserer(lot, bilan);
+                lot = new ArrayList<>(batchSize);
+            }
+        }
+        if (format == Format.CSV && colonnes == null) {
+            throw new RuntimeException("Ligne d'en-tête CSV manquante");
+        }
+        inserer(lot, bilan);
+
+        log.info("Import de flotte terminé: {} ligne(s), {} importée(s), {} rejetée(s)",
+                bilan.lignes, bilan.importees, bilan.rejetees);
+        return FleetImportReport.builder()
+                .lignes(bilan.lignes)
+                .importees(bilan.importees)
+                .rejetees(bilan.rejetees)
+                .erreurs(bilan.erreurs)
+                .build();
+    }
+
+    private void inserer(List<Ligne> lot, Bilan bilan) {
+        if (lot.isEmpty()) {
+            return;
+        }
+        List<Car> cars = lot.stream().map(Ligne::car).toList();
+        try {
+            List<Car> saved = transactionTemplate.execute(status -> carRepository.saveAll(cars));
+            fleetSnapshot.upsertAll(saved);
+            bilan.importees += saved.size();
+        } catch (DataAccessException e) {
+            // Lot refusé (immatriculation créée entre-temps par une autre écriture) :
+            // on rejoue ligne par ligne pour n'écarter que les fautives
+            log.warn("Lot d'import refusé, insertion ligne par ligne: {}", e.getMostSpecificCause().getMessage());
+            for (Ligne ligne : lot) {
+                ligne.car().setId(null);
+                try {
+                    Car saved = transactionTemplate.execute(status -> carRepository.save(ligne.car()));
+                    fleetSnapshot.upsert(saved);
+                    bilan.importees++;
+                } catch (DataAccessException ex) {
+                    bilan.rejeter(ligne.numero(), "Insertion refusée: " + ex.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    // Position de chaque colonne ; disponible est facultative (true par défaut)
+    private static Map<String, Integer> enTete(String line) {
+        Map<String, Integer> colonnes = new HashMap<>();
+        String[] noms = line.split(",", -1);
+        for (int i = 0; i < noms.length; i++) {
+            colonnes.put(noms[i].trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String colonne : COLONNES_OBLIGATOIRES) {
+            if (!colonnes.containsKey(colonne)) {
+                throw new RuntimeException("Colonne CSV manquante: " + colonne);
+            }
+        }
+        return colonnes;
+    }
+
+    // Champs séparés par des virgules, sans guillemets
+    private static Car depuisCsv(String line, Map<String, Integer> colonnes) {
+        String[] valeurs = line.split(",", -1);
+        Integer disponible = colonnes.get("disponible");
+        return Car.builder()
+                .brand(champ(valeurs, colonnes.get("brand")))
+                .model(champ(valeurs, colonnes.get("model")))
+                .year(entier(champ(valeurs, colonnes.get("year"))))
+                .immatriculation(entier(champ(valeurs, colonnes.get("immatriculation"))))
+                .categorie(champ(valeurs, colonnes.get("categorie")))
+                .pricePerDay(decimal(champ(valeurs, colonnes.get("priceperday"))))
+                .disponible(disponible == null || champ(valeurs, disponible) == null
+                        || Boolean.parseBoolean(champ(valeurs, disponible)))
+                .build();
+    }
+
+    // Les champs absents gardent les valeurs du modèle (disponible par défaut)
+    private Car depuisJson(String line) {
+        try {
+            Car car = objectMapper.readerForUpdating(Car.builder().disponible(true).build()).readValue(line);
+            car.setId(null);
+            return car;
+        } catch (JacksonException e) {
+            throw new RuntimeException(e.getOriginalMessage());
+        }
+    }
+
+    private static String valider(Car car) {
+        if (isBlank(car.getBrand()) || isBlank(car.getModel()) || isBlank(car.getCategorie())) {
+            return "brand, model et categorie sont obligatoires";
+        }
+        if (car.getImmatriculation() == null || car.getImmatriculation() <= 0) {
+            return "Immatriculation invalide";
+        }
+        if (car.getYear() == null || car.getYear() < 1900 || car.getYear() > Year.now().getValue() + 1) {
+            return "Année invalide: " + car.getYear();
+        }
+        if (car.getPricePerDay() == null || !(car.getPricePerDay() > 0)) {
+            return "Prix par jour invalide: " + car.getPricePerDay();
+        }
+        return null;
+    }
+
+    private static String champ(String[] valeurs, int index) {
+        if (index >= valeurs.length) {
+            return null;
+        }
+        String valeur = valeurs[index].trim();
+        return valeur.isEmpty() ? null : valeur;
+    }
+
+    private static Integer entier(String valeur) {
+        return valeur == null ? null : Integer.valueOf(valeur);
+    }
+
+    private static Double decimal(String valeur) {
+        return valeur == null ? null : Double.valueOf(valeur);
+    }
+
+    private static boolean isBlank(String valeur) {
+        return valeur == null || valeur.isBlank();
+    }
+
+    private record Ligne(long numero, Car car) {
+    }
+
+    private final class Bilan {
+        private long lignes;
+        private long importees;
+        private long rejetees;
+        private final List<FleetImportError> erreurs = new ArrayList<>();
+
+        void rejeter(long ligne, String message) {
+            rejetees++;
+            if (erreurs.size() < maxReportedErrors) {
+                erreurs.add(new FleetImportError(ligne, message));
+            }
+        }
+    }
+}
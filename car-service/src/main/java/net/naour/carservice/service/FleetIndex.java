@@ -0,0 +1,167 @@
+package net.naour.carservice.service;
+
+import net.naour.carservice.entities.Car;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Index inversés d'un instantané de la flotte : un bitset par marque, modèle, catégorie et année,
+ * plus les positions triées par prix pour les intervalles. Immuable, reconstruit quand un champ
+ * indexé change (une simple mise à jour de disponibilité le réutilise tel quel).
+ */
+final class FleetIndex {
+    private final int size;
+    private final Facet brands;
+    private final Facet models;
+    private final Facet categories;
+    private final TreeMap<Integer, long[]> years = new TreeMap<>();
+    private final double[] sortedPrices;
+    private final int[] byPrice;
+
+    FleetIndex(Car[] cars) {
+        this.size = cars.length;
+        this.brands = new Facet(cars, Car::getBrand);
+        this.models = new Facet(cars, Car::getModel);
+        this.categories = new Facet(cars, Car::getCategorie);
+
+        for (int i = 0; i < cars.length; i++) {
+            if (cars[i].getYear() != null) {
+                Bitsets.set(years.computeIfAbsent(cars[i].getYear(), y -> Bitsets.empty(size)), i);
+            }
+        }
+
+        Integer[] order = new Integer[cars.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> price(cars[i])));
+        this.byPrice = new int[cars.length];
+        this.sortedPrices = new double[cars.length];
+        for (int i = 0; i < order.length; i++) {
+            byPrice[i] = order[i];
+            sortedPrices[i] = price(cars[order[i]]);
+        }
+    }
+
+    Facet brands() {
+        return brands;
+    }
+
+    Facet models() {
+        return models;
+    }
+
+    Facet categories() {
+        return categories;
+    }
+
+    SortedMap<Integer, long[]> years() {
+        return years;
+    }
+
+    long[] yearRange(Integer minYear, Integer maxYear) {
+        long[] bits = Bitsets.empty(size);
+        NavigableMap<Integer, long[]> range = years;
+        if (minYear != null) {
+            range = range.tailMap(minYear, true);
+        }
+        if (maxYear != null) {
+            range = range.headMap(maxYear, true);
+        }
+        range.values().forEach(yearBits -> Bitsets.orInto(bits, yearBits));
+        return bits;
+    }
+
+    long[] priceRange(Double minPrice, Double maxPrice) {
+        long[] bits = Bitsets.empty(size);
+        int from = minPrice != null ? lowerBound(minPrice) : 0;
+        int to = maxPrice != null ? upperBound(maxPrice) : sortedPrices.length;
+        for (int i = from; i < to; i++) {
+            Bitsets.set(bits, byPrice[i]);
+        }
+        return bits;
+    }
+
+    // Premier indice dont le prix est >= prix
+    private int lowerBound(double prix) {
+        int low = 0;
+        int high = sortedPrices.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedPrices[mid] < prix) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Premier indice dont le prix est > prix
+    private int upperBound(double prix) {
+        int low = 0;
+        int high = sortedPrices.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedPrices[mid] <= prix) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static double price(Car car) {
+        return car.getPricePerDay() != null ? car.getPricePerDay() : 0.0;
+    }
+
+    /**
+     * Facette textuelle : une liste de positions (bitset) par valeur, recherche insensible à la casse.
+     * Les comptes sont renvoyés avec la valeur telle qu'elle a été saisie.
+     */
+    static final class Facet {
+        private final Map<String, long[]> bitsByKey = new HashMap<>();
+        private final Map<String, String> labels = new TreeMap<>();
+
+        private Facet(Car[] cars, Function<Car, String> field) {
+            for (int i = 0; i < cars.length; i++) {
+                String value = field.apply(cars[i]);
+                if (value == null) {
+                    continue;
+                }
+                String key = key(value);
+                labels.putIfAbsent(key, value);
+                Bitsets.set(bitsByKey.computeIfAbsent(key, k -> Bitsets.empty(cars.length)), i);
+            }
+        }
+
+        // Union des valeurs demandées
+        long[] anyOf(Collection<String> values, int size) {
+            long[] bits = Bitsets.empty(size);
+            for (String value : values) {
+                long[] valueBits = bitsByKey.get(key(value));
+                if (valueBits != null) {
+                    Bitsets.orInto(bits, valueBits);
+                }
+            }
+            return bits;
+        }
+
+        Map<String, Integer> counts(long[] base) {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            labels.forEach((key, label) -> {
+                int count = Bitsets.andCardinality(base, bitsByKey.get(key));
+                if (count > 0) {
+                    counts.put(label, count);
+                }
+            });
+            return counts;
+        }
+
+        private static String key(String value) {
+            return value.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package net.naour.carservice.service;
+
+import lombok.RequiredArgsConstructor;
+import net.naour.carservice.entities.Car;
+import org.springframework.data.rest.core.annotation.HandleAfterCreate;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
+import org.springframework.data.rest.core.annotation.HandleAfterSave;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.stereotype.Component;
+
+// Écritures passant par la ressource Spring Data REST /cars : l'instantané de la flotte suit aussi
+@Component
+@RepositoryEventHandler
+@RequiredArgsConstructor
+public class FleetRepositoryEventHandler {
+    private final FleetSnapshot fleetSnapshot;
+
+    @HandleAfterCreate
+    @HandleAfterSave
+    public void afterSave(Car car) {
+        fleetSnapshot.upsert(car);
+    }
+
+    @HandleAfterDelete
+    public void afterDelete(Car car) {
+        fleetSnapshot.remove(car.getId());
+    }
+}
@@ -0,0 +1,349 @@
+package net.naour.carservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.naour.carservice.dto.CarSearchCriteria;
+import net.naour.carservice.dto.CarSearchResult;
+import net.naour.carservice.entities.Car;
+import net.naour.carservice.entities.CarChange;
+import net.naour.carservice.entities.CarChangeType;
+import net.naour.carservice.repository.CarRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Vue en mémoire de la flotte, optimisée pour la lecture : tableau immuable des voitures triées par id,
+ * bitset des voitures disponibles et index inversés par facette (FleetIndex) pour la recherche. Chaque écriture publie un nouvel instantané (copie sur écriture) ;
+ * les lectures ne touchent pas la base et renvoient des listes précalculées, sans allocation par requête.
+ * Les créations, changements de disponibilité ou de prix et suppressions alimentent CarChangeFeed : ils y sont
+ * mis en file sous le verrou de l'instantané (même ordre), puis enregistrés après sa libération.
+ * Les écritures sont appliquées après leur commit : une version de ligne plus ancienne que celle de l'instantané,
+ * ou une voiture déjà supprimée, est ignorée, quel que soit l'ordre d'arrivée des écritures concurrentes.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FleetSnapshot {
+    private static final int MAX_SEARCH_SIZE = 100;
+
+    private final CarRepository carRepository;
+    private final CarChangeFeed changeFeed;
+    private volatile Fleet fleet = new Fleet(new Car[0], new FleetIndex(new Car[0]), 0);
+    // Ids supprimés (jamais réattribués par la séquence) ; protégé par le moniteur de l'instance
+    private final Set<Long> supprimees = new HashSet<>();
+
+    // Chargé après le commandLineRunner d'initialisation des voitures
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reload() {
+        List<Car> cars = carRepository.findAll(Sort.by("id"));
+        publish(cars.stream().map(FleetSnapshot::copy).toArray(Car[]::new));
+        log.info("Instantané de la flotte chargé: {} voiture(s), {} disponible(s)",
+                cars.size(), fleet.available.size());
+    }
+
+    public List<Car> all() {
+        return fleet.all;
+    }
+
+    public List<Car> available() {
+        return fleet.available;
+    }
+
+    public Optional<Car> get(Long id) {
+        Fleet current = fleet;
+        int index = current.indexOf(id);
+        return index >= 0 ? Optional.of(current.cars[index]) : Optional.empty();
+    }
+
+    public List<Car> get(Collection<Long> ids) {
+        Fleet current = fleet;
+        List<Car> found = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            int index = current.indexOf(id);
+            if (index >= 0) {
+                found.add(current.cars[index]);
+            }
+        }
+        return found;
+    }
+
+    // Appelé après chaque création ou modification enregistrée
+    public void upsert(Car car) {
+        appliquer(car);
+        changeFeed.flush();
+    }
+
+    // Lot de voitures enregistrées (import en masse) : fusion triée par id et une seule publication
+    public void upsertAll(Collection<Car> saved) {
+        appliquer(saved);
+        changeFeed.flush();
+    }
+
+    public void remove(Long id) {
+        retirer(id);
+        changeFeed.flush();
+    }
+
+    private synchronized void appliquer(Car car) {
+        Fleet current = fleet;
+        int index = current.indexOf(car.getId());
+        if (!aAppliquer(car, index >= 0 ? current.cars[index] : null)) {
+            return;
+        }
+        Car[] cars;
+        if (index >= 0) {
+            cars = current.cars.clone();
+            cars[index] = copy(car);
+            // Seule la disponibilité change (cas le plus fréquent) : les index inversés restent valables
+            if (memesChampsIndexes(current.cars[index], car)) {
+                fleet = new Fleet(cars, current.index, current.version + 1);
+                changeFeed.enqueue(changements(current.cars[index], car));
+                return;
+            }
+        } else {
+            int insertAt = -index - 1;
+            cars = new Car[current.cars.length + 1];
+            System.arraycopy(current.cars, 0, cars, 0, insertAt);
+            cars[insertAt] = copy(car);
+            System.arraycopy(current.cars, insertAt, cars, insertAt + 1, current.cars.length - insertAt);
+        }
+        publish(cars);
+        changeFeed.enqueue(changements(index >= 0 ? current.cars[index] : null, car));
+    }
+
+    private synchronized void appliquer(Collection<Car> saved) {
+        if (saved.isEmpty()) {
+            return;
+        }
+        Fleet current = fleet;
+        Car[] added = saved.stream()
+                .filter(car -> {
+                    int index = current.indexOf(car.getId());
+                    return aAppliquer(car, index >= 0 ? current.cars[index] : null);
+                })
+                .map(FleetSnapshot::copy)
+                .sorted(Comparator.comparing(Car::getId)).toArray(Car[]::new);
+        if (added.length == 0) {
+            return;
+        }
+        List<CarChange> changes = new ArrayList<>(added.length);
+        for (Car car : added) {
+            int index = current.indexOf(car.getId());
+            changes.addAll(changements(index >= 0 ? current.cars[index] : null, car));
+        }
+        Car[] cars = new Car[current.cars.length + added.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < current.cars.length || j < added.length) {
+            if (j == added.length || (i < current.cars.length && current.ids[i] < added[j].getId())) {
+                cars[n++] = current.cars[i++];
+            } else {
+                if (i < current.cars.length && current.ids[i] == added[j].getId()) {
+                    i++; // remplacée par la nouvelle version
+                }
+                cars[n++] = added[j++];
+            }
+        }
+        publish(n == cars.length ? cars : Arrays.copyOf(cars, n));
+        changeFeed.enqueue(changes);
+    }
+
+    private synchronized void retirer(Long id) {
+        supprimees.add(id);
+        Fleet current = fleet;
+        int index = current.indexOf(id);
+        if (index < 0) {
+            return;
+        }
+        Car[] cars = new Car[current.cars.length - 1];
+        System.arraycopy(current.cars, 0, cars, 0, index);
+        System.arraycopy(current.cars, index + 1, cars, index, cars.length - index);
+        publish(cars);
+        changeFeed.enqueue(List.of(CarChange.builder().carId(id).type(CarChangeType.SUPPRESSION).build()));
+    }
+
+    // Version du catalogue, incrémentée à chaque modification : sert d'ETag fort aux lectures
+    public String etag() {
+        // L'époque du journal distingue deux démarrages : un ETag émis avant un redémarrage ne peut pas correspondre
+        return "\"catalog-" + changeFeed.epoch() + "-" + fleet.version + "\"";
+    }
+
+    // Recherche par facettes : intersection en mémoire des bitsets de chaque filtre
+    public CarSearchResult search(CarSearchCriteria criteria) {
+        if (criteria.getPage() < 0) {
+            throw new RuntimeException("Le numéro de page doit être positif ou nul");
+        }
+        if (criteria.getSize() < 1 || criteria.getSize() > MAX_SEARCH_SIZE) {
+            throw new RuntimeException("La taille de page doit être comprise entre 1 et " + MAX_SEARCH_SIZE);
+        }
+        Fleet current = fleet;
+        FleetIndex index = current.index;
+        int size = current.cars.length;
+
+        long[] brand = isEmpty(criteria.getBrand()) ? null : index.brands().anyOf(criteria.getBrand(), size);
+        long[] model = isEmpty(criteria.getModel()) ? null : index.models().anyOf(criteria.getModel(), size);
+        long[] categorie = isEmpty(criteria.getCategorie())
+                ? null : index.categories().anyOf(criteria.getCategorie(), size);
+        long[] year = criteria.getMinYear() == null && criteria.getMaxYear() == null
+                ? null : index.yearRange(criteria.getMinYear(), criteria.getMaxYear());
+        long[] price = criteria.getMinPrice() == null && criteria.getMaxPrice() == null
+                ? null : index.priceRange(criteria.getMinPrice(), criteria.getMaxPrice());
+        long[] disponible = criteria.getDisponible() == null ? null
+                : criteria.getDisponible() ? current.disponibles : Bitsets.andNot(Bitsets.full(size), current.disponibles);
+
+        long[][] filters = {brand, model, categorie, year, price, disponible};
+        long[] matches = intersect(size, filters, -1);
+
+        Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+        facets.put("brand", index.brands().counts(intersect(size, filters, 0)));
+        facets.put("model", index.models().counts(intersect(size, filters, 1)));
+        facets.put("categorie", index.categories().counts(intersect(size, filters, 2)));
+        long[] yearBase = intersect(size, filters, 3);
+        Map<String, Integer> years = new LinkedHashMap<>();
+        index.years().forEach((y, bits) -> {
+            int count = Bitsets.andCardinality(yearBase, bits);
+            if (count > 0) {
+                years.put(String.valueOf(y), count);
+            }
+        });
+        facets.put("year", years);
+        long[] disponibleBase = intersect(size, filters, 5);
+        int disponibles = Bitsets.andCardinality(disponibleBase, current.disponibles);
+        Map<String, Integer> disponibilite = new LinkedHashMap<>();
+        disponibilite.put("true", disponibles);
+        disponibilite.put("false", Bitsets.cardinality(disponibleBase) - disponibles);
+        facets.put("disponible", disponibilite);
+
+        // Page demandée : on saute les premiers résultats sans les matérialiser
+        List<Car> page = new ArrayList<>(criteria.getSize());
+        long skip = (long) criteria.getPage() * criteria.getSize();
+        for (int i = Bitsets.nextSetBit(matches, 0); i >= 0 && page.size() < criteria.getSize();
+             i = Bitsets.nextSetBit(matches, i + 1)) {
+            if (skip > 0) {
+                skip--;
+            } else {
+                page.add(current.cars[i]);
+            }
+        }
+
+        return new CarSearchResult(Bitsets.cardinality(matches), criteria.getPage(), criteria.getSize(), page, facets);
+    }
+
+    private void publish(Car[] cars) {
+        fleet = new Fleet(cars, new FleetIndex(cars), fleet.version + 1);
+    }
+
+    // Intersection de tous les filtres actifs, sauf celui d'indice exclu (-1 : aucun)
+    private static long[] intersect(int size, long[][] filters, int excluded) {
+        long[] result = Bitsets.full(size);
+        for (int i = 0; i < filters.length; i++) {
+            if (i != excluded && filters[i] != null) {
+                Bitsets.andInto(result, filters[i]);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isEmpty(List<String> values) {
+        return values == null || values.isEmpty();
+    }
+
+    // Entrées du journal pour une écriture : création, ou changement de disponibilité et/ou de prix
+    private static List<CarChange> changements(Car before, Car after) {
+        List<CarChange> changes = new ArrayList<>(2);
+        if (before == null) {
+            changes.add(changement(after, CarChangeType.CREATION));
+        } else {
+            if (before.isDisponible() != after.isDisponible()) {
+                changes.add(changement(after, CarChangeType.DISPONIBILITE));
+            }
+            if (!Objects.equals(before.getPricePerDay(), after.getPricePerDay())) {
+                changes.add(changement(after, CarChangeType.PRIX));
+            }
+        }
+        return changes;
+    }
+
+    private static CarChange changement(Car car, CarChangeType type) {
+        return CarChange.builder()
+                .carId(car.getId())
+                .type(type)
+                .disponible(car.isDisponible())
+                .pricePerDay(car.getPricePerDay())
+                .build();
+    }
+
+    // Écriture à publier : voiture non supprimée et version plus récente que celle de l'instantané
+    private boolean aAppliquer(Car car, Car before) {
+        if (supprimees.contains(car.getId())) {
+            return false;
+        }
+        return before == null || before.getVersion() == null || car.getVersion() == null
+                || car.getVersion() > before.getVersion();
+    }
+
+    private static boolean memesChampsIndexes(Car before, Car after) {
+        return Objects.equals(before.getBrand(), after.getBrand())
+                && Objects.equals(before.getModel(), after.getModel())
+                && Objects.equals(before.getCategorie(), after.getCategorie())
+                && Objects.equals(before.getYear(), after.getYear())
+                && Objects.equals(before.getPricePerDay(), after.getPricePerDay());
+    }
+
+    // Copie détachée : l'instantané ne partage pas d'instance avec le contexte de persistance
+    private static Car copy(Car car) {
+        return Car.builder()
+                .id(car.getId())
+                .brand(car.getBrand())
+                .model(car.getModel())
+                .year(car.getYear())
+                .disponible(car.isDisponible())
+                .immatriculation(car.getImmatriculation())
+                .categorie(car.getCategorie())
+                .pricePerDay(car.getPricePerDay())
+                .version(car.getVersion())
+                .build();
+    }
+
+    private static final class Fleet {
+        private final Car[] cars;
+        private final long[] ids;
+        private final long[] disponibles;
+        private final FleetIndex index;
+        private final List<Car> all;
+        private final List<Car> available;
+        private final long version;
+
+        private Fleet(Car[] cars, FleetIndex index, long version) {
+            this.cars = cars;
+            this.index = index;
+            this.version = version;
+            this.ids = new long[cars.length];
+            this.disponibles = Bitsets.empty(cars.length);
+            for (int i = 0; i < cars.length; i++) {
+                ids[i] = cars[i].getId();
+                if (cars[i].isDisponible()) {
+                    Bitsets.set(disponibles, i);
+                }
+            }
+            this.all = List.of(cars);
+
+            Car[] libres = new Car[Bitsets.cardinality(disponibles)];
+            int n = 0;
+            for (int i = Bitsets.nextSetBit(disponibles, 0); i >= 0; i = Bitsets.nextSetBit(disponibles, i + 1)) {
+                libres[n++] = cars[i];
+            }
+            this.available = List.of(libres);
+        }
+
+        // Position de la voiture, ou -(point d'insertion) - 1 si elle est absente
+        int indexOf(Long id) {
+            return id == null ? -1 : Arrays.binarySearch(ids, id);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package net.naour.carservice.service;
+
+import net.naour.carservice.dto.CarChangeBatch;
+import net.naour.carservice.entities.CarChange;
+import net.naour.carservice.entities.CarChangeType;
+import net.naour.carservice.repository.CarChangeRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+
+@SpringBootTest(properties = {"eureka.client.enabled=false", "spring.jpa.show-sql=false",
+        "car.changes.buffer-size=4"})
+class CarChangeFeedTests {
+
+    @Autowired
+    private CarChangeFeed changeFeed;
+
+    @Autowired
+    private CarChangeRepository carChangeRepository;
+
+    @MockitoSpyBean
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void failedPersistLeavesNoGapInSequence() {
+        long head = changeFeed.head();
+        doThrow(new DataAccessResourceFailureException("Base indisponible"))
+                .doCallRealMethod()
+                .when(transactionTemplate).executeWithoutResult(any());
+
+        changeFeed.enqueue(List.of(changement(901L)));
+        changeFeed.flush();
+        // Rien n'est publié tant que l'écriture n'a pas réussi
+        assertThat(changeFeed.head()).isEqualTo(head);
+        assertThat(changeFeed.read(head, 10).getChanges()).isEmpty();
+
+        changeFeed.enqueue(List.of(changement(902L)));
+        changeFeed.flush();
+
+        CarChangeBatch batch = changeFeed.read(head, 10);
+        assertThat(batch.getHead()).isEqualTo(head + 2);
+        assertThat(batch.getChanges()).extracting(CarChange::getSeq).containsExactly(head + 1, head + 2);
+        assertThat(batch.getChanges()).extracting(CarChange::getCarId).containsExactly(901L, 902L);
+        // La table porte les mêmes seq : un redémarrage reprend la numérotation après head + 2
+        assertThat(carChangeRepository.findTopByOrderBySeqDesc()).map(CarChange::getSeq).contains(head + 2);
+    }
+
+    @Test
+    void abandonedChangesStartNewEpoch() {
+        String epoch = changeFeed.epoch();
+        long head = changeFeed.head();
+        doThrow(new DataAccessResourceFailureException("Base indisponible"))
+                .when(transactionTemplate).executeWithoutResult(any());
+
+        // Au-delà de la capacité du tampon, les changements non enregistrés sont abandonnés
+        for (long carId = 911; carId <= 915; carId++) {
+            changeFeed.enqueue(List.of(changement(carId)));
+            changeFeed.flush();
+        }
+
+        assertThat(changeFeed.head()).isEqualTo(head);
+        assertThat(changeFeed.epoch()).isNotEqualTo(epoch);
+        // Les consommateurs voient la nouvelle époque et repartent du catalogue complet
+        assertThat(changeFeed.read(head, 10).getEpoch()).isEqualTo(changeFeed.epoch());
+    }
+
+    private static CarChange changement(Long carId) {
+        return CarChange.builder()
+                .carId(carId)
+                .type(CarChangeType.DISPONIBILITE)
+                .disponible(false)
+                .pricePerDay(50.0)
+                .build();
+    }
+}
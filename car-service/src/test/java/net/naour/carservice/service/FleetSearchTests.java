@@ -0,0 +1,93 @@
+package net.naour.carservice.service;
+
+import net.naour.carservice.dto.CarSearchCriteria;
+import net.naour.carservice.dto.CarSearchResult;
+import net.naour.carservice.entities.Car;
+import net.naour.carservice.repository.CarRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+
+class FleetSearchTests {
+
+    @Test
+    void fullBitsetMasksTheTailWord() {
+        for (int size : new int[]{0, 1, 63, 64, 65, 130}) {
+            long[] bits = Bitsets.full(size);
+            assertThat(bits).hasSize((size + 63) / 64);
+            assertThat(Bitsets.cardinality(bits)).isEqualTo(size);
+            // Aucun bit au-delà de la dernière voiture
+            assertThat(Bitsets.nextSetBit(bits, size)).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void priceRangeIncludesBothBounds() {
+        FleetIndex index = new FleetIndex(new Car[]{
+                car(1L, "Toyota", "Yaris", 30.0),
+                car(2L, "Toyota", "Corolla", 50.0),
+                car(3L, "BMW", "Serie 3", 80.0),
+                car(4L, "BMW", "X5", 120.0)});
+
+        assertThat(positions(index.priceRange(50.0, 80.0))).containsExactly(1, 2);
+        assertThat(positions(index.priceRange(null, 50.0))).containsExactly(0, 1);
+        assertThat(positions(index.priceRange(80.0, null))).containsExactly(2, 3);
+        assertThat(positions(index.priceRange(51.0, 79.0))).isEmpty();
+    }
+
+    @Test
+    void facetCountsIgnoreTheirOwnFilter() {
+        FleetSnapshot snapshot = new FleetSnapshot(mock(CarRepository.class), mock(CarChangeFeed.class));
+        snapshot.upsertAll(List.of(
+                car(1L, "Toyota", "Yaris", 30.0),
+                car(2L, "Toyota", "Corolla", 50.0),
+                car(3L, "BMW", "Serie 3", 80.0),
+                car(4L, "BMW", "X5", 120.0)));
+
+        CarSearchCriteria criteria = new CarSearchCriteria();
+        criteria.setBrand(List.of("toyota"));
+        criteria.setMaxPrice(80.0);
+        CarSearchResult result = snapshot.search(criteria);
+
+        assertThat(result.getTotal()).isEqualTo(2);
+        // Les autres marques restent comptées sous le filtre de prix, pas sous celui de marque
+        assertThat(result.getFacets().get("brand")).containsOnly(entry("BMW", 1), entry("Toyota", 2));
+        assertThat(result.getFacets().get("model")).containsOnly(entry("Corolla", 1), entry("Yaris", 1));
+    }
+
+    @Test
+    void negativePageHasItsOwnMessage() {
+        FleetSnapshot snapshot = new FleetSnapshot(mock(CarRepository.class), mock(CarChangeFeed.class));
+        CarSearchCriteria criteria = new CarSearchCriteria();
+        criteria.setPage(-1);
+
+        assertThatThrownBy(() -> snapshot.search(criteria)).hasMessageContaining("numéro de page");
+    }
+
+    private static List<Integer> positions(long[] bits) {
+        List<Integer> positions = new ArrayList<>();
+        for (int i = Bitsets.nextSetBit(bits, 0); i >= 0; i = Bitsets.nextSetBit(bits, i + 1)) {
+            positions.add(i);
+        }
+        return positions;
+    }
+
+    private static Car car(Long id, String brand, String model, double pricePerDay) {
+        return Car.builder()
+                .id(id)
+                .brand(brand)
+                .model(model)
+                .year(2022)
+                .disponible(true)
+                .immatriculation(id.intValue())
+                .categorie("Berline")
+                .pricePerDay(pricePerDay)
+                .build();
+    }
+}
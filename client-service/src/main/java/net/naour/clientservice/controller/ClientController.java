@@ -27,6 +27,12 @@ public class ClientController {
                 .orElseThrow();
     }
 
+    // Plusieurs clients en un seul appel : /clients/batch?ids=1,2,3
+    @GetMapping("/batch")
+    public List<Client> getClientsByIds(@RequestParam List<Long> ids) {
+        return clientService.getClientsByIds(ids);
+    }
+
     @GetMapping("/email/{email}")
     public List<Client> getClientByEmail(@PathVariable String email) {
         return clientService.getClientByEmail(email);
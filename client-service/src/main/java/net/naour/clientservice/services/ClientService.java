@@ -8,6 +8,7 @@ import net.naour.clientservice.repositories.ClientRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,6 +26,10 @@ public class ClientService {
         return clientRepository.findById(id);
     }
 
+    public List<Client> getClientsByIds(Collection<Long> ids) {
+        return clientRepository.findAllById(ids);
+    }
+
     public List<Client> getClientByEmail(String email) {
         return clientRepository.findByEmail(email);
     }
@@ -0,0 +1,136 @@
+package net.naour.eventstream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Diffusion SSE d'événements de type E, filtrés par une clé K (le client concerné par exemple).
+ * Chaque abonné a un tampon borné vidé par son propre thread virtuel ; un abonné trop lent dont le tampon
+ * est plein est déconnecté plutôt que de ralentir les autres. Les événements publiés dans une transaction
+ * ne partent qu'après son commit. Le service qui l'utilise en appelle shutdown() à l'arrêt.
+ */
+@Slf4j
+public class SseBroadcaster<E, K> {
+    private final Set<Subscriber<E, K>> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong sequence = new AtomicLong();
+    private final String eventName;
+    private final Function<E, K> key;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final Duration timeout;
+    private final Duration heartbeat;
+
+    public SseBroadcaster(String eventName, Function<E, K> key, int bufferSize, int maxSubscribers,
+                          Duration timeout, Duration heartbeat) {
+        this.eventName = eventName;
+        this.key = key;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.timeout = timeout;
+        this.heartbeat = heartbeat;
+    }
+
+    // filter null : tous les événements
+    public SseEmitter subscribe(K filter) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new RuntimeException("Nombre maximal d'abonnés aux événements atteint");
+        }
+        Subscriber<E, K> subscriber = new Subscriber<>(filter, new SseEmitter(timeout.toMillis()),
+                new ArrayBlockingQueue<>(bufferSize));
+        subscriber.emitter.onCompletion(() -> disconnect(subscriber));
+        subscriber.emitter.onTimeout(() -> disconnect(subscriber));
+        subscriber.emitter.onError(e -> disconnect(subscriber));
+        subscribers.add(subscriber);
+        subscriber.sender = executor.submit(() -> deliver(subscriber));
+        return subscriber.emitter;
+    }
+
+    // Publié après le commit : un abonné ne voit jamais un statut annulé par un rollback
+    public void publish(E event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(event);
+                }
+            });
+        } else {
+            dispatch(event);
+        }
+    }
+
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        executor.shutdownNow();
+    }
+
+    private void dispatch(E event) {
+        long id = sequence.incrementAndGet();
+        K eventKey = key.apply(event);
+        for (Subscriber<E, K> subscriber : subscribers) {
+            if (subscriber.filter != null && !Objects.equals(subscriber.filter, eventKey)) {
+                continue;
+            }
+            if (!subscriber.buffer.offer(new Delivery<>(id, event))) {
+                log.warn("Abonné trop lent déconnecté (tampon de {} événements plein)", bufferSize);
+                subscriber.emitter.complete();
+                disconnect(subscriber);
+            }
+        }
+    }
+
+    private void deliver(Subscriber<E, K> subscriber) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Delivery<E> delivery = subscriber.buffer.poll(heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+                if (delivery == null) {
+                    // Commentaire SSE : garde la connexion ouverte et détecte les clients partis
+                    subscriber.emitter.send(SseEmitter.event().comment("keep-alive"));
+                } else {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(String.valueOf(delivery.id()))
+                            .name(eventName)
+                            .data(delivery.event(), MediaType.APPLICATION_JSON));
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            disconnect(subscriber);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void disconnect(Subscriber<E, K> subscriber) {
+        if (subscribers.remove(subscriber) && subscriber.sender != null) {
+            subscriber.sender.cancel(true);
+        }
+    }
+
+    private record Delivery<E>(long id, E event) {
+    }
+
+    private static final class Subscriber<E, K> {
+        private final K filter;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Delivery<E>> buffer;
+        private volatile Future<?> sender;
+
+        private Subscriber(K filter, SseEmitter emitter, BlockingQueue<Delivery<E>> buffer) {
+            this.filter = filter;
+            this.emitter = emitter;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -51,6 +51,7 @@ const AdminPayments = () => {
       EN_COURS: 'primary',
       REUSSI: 'success',
       ECHOUE: 'danger',
+      REMBOURSEMENT_EN_COURS: 'primary',
       REMBOURSE: 'default',
     };
     return colors[statut] || 'default';
@@ -70,6 +71,7 @@ const AdminPayments = () => {
           <option value="EN_COURS">En cours</option>
           <option value="REUSSI">Réussi</option>
           <option value="ECHOUE">Échoué</option>
+          <option value="REMBOURSEMENT_EN_COURS">Remboursement en cours</option>
           <option value="REMBOURSE">Remboursé</option>
         </select>
       </div>
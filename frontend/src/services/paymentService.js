@@ -44,5 +44,13 @@ export const paymentService = {
     const response = await api.post(`${BASE_URL}/${id}/confirm`);
     return response.data;
   },
-};
 
+  // S'abonner aux changements de statut des paiements (SSE) au lieu d'interroger l'API en boucle.
+  // Renvoie l'EventSource : appeler close() pour se désabonner.
+  subscribeToStatusEvents: (clientId, onEvent) => {
+    const query = clientId != null ? `?clientId=${clientId}` : '';
+    const source = new EventSource(`${BASE_URL}/events${query}`);
+    source.addEventListener('payment-status', (event) => onEvent(JSON.parse(event.data)));
+    return source;
+  },
+};
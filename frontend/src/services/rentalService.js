@@ -66,5 +66,13 @@ export const rentalService = {
     });
     return response.data;
   },
-};
 
+  // S'abonner aux changements de statut des réservations (SSE) au lieu d'interroger l'API en boucle.
+  // Renvoie l'EventSource : appeler close() pour se désabonner.
+  subscribeToStatusEvents: (clientId, onEvent) => {
+    const query = clientId != null ? `?clientId=${clientId}` : '';
+    const source = new EventSource(`${BASE_URL}/events${query}`);
+    source.addEventListener('rental-status', (event) => onEvent(JSON.parse(event.data)));
+    return source;
+  },
+};
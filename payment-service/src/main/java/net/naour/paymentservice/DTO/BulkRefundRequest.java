@@ -0,0 +1,18 @@
+package net.naour.paymentservice.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Paiements à rembourser : par ID et/ou tous les paiements des réservations indiquées
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkRefundRequest {
+    private List<Long> paymentIds;
+    private List<Long> rentalIds;
+}
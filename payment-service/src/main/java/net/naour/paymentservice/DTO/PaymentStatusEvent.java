@@ -0,0 +1,23 @@
+package net.naour.paymentservice.DTO;
+
+import net.naour.paymentservice.entities.PaymentStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Changement de statut d'un paiement, poussé aux abonnés de GET /payments/events
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentStatusEvent {
+    private Long paymentId;
+    private Long rentalId;
+    private Long clientId;
+    private PaymentStatus statut;
+    private String transactionId;
+    private double montant;
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,28 @@
+package net.naour.paymentservice.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Avancement d'une tâche de remboursement groupé, consultable via GET /payments/refunds/{jobId}
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefundJob {
+    public enum Etat { EN_COURS, TERMINE, ECHOUE }
+
+    private String jobId;
+    private Etat etat;
+    private int total;        // paiements à rembourser après validation
+    private int traites;      // appels au fournisseur terminés
+    private int rembourses;
+    private int echecs;
+    private List<RefundResult> resultats;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,20 @@
+package net.naour.paymentservice.DTO;
+
+import net.naour.paymentservice.entities.PaymentStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Résultat d'un paiement dans une tâche de remboursement ; statut null si le paiement est introuvable
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefundResult {
+    private Long paymentId;
+    private Long rentalId;
+    private PaymentStatus statut;
+    private String message;
+}
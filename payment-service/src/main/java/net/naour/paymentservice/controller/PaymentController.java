@@ -1,19 +1,38 @@
 package net.naour.paymentservice.controller;
 
 import lombok.RequiredArgsConstructor;
+import net.naour.paymentservice.DTO.BulkRefundRequest;
 import net.naour.paymentservice.DTO.PaymentRequest;
 import net.naour.paymentservice.DTO.PaymentResponse;
+import net.naour.paymentservice.DTO.RefundJob;
 import net.naour.paymentservice.entities.MethodePaiement;
 import net.naour.paymentservice.entities.Payment;
 import net.naour.paymentservice.entities.PaymentStatus;
 import net.naour.paymentservice.repositories.PaymentRepository;
+import net.naour.paymentservice.services.PaymentEventPublisher;
 import net.naour.paymentservice.services.PaymentService;
+import net.naour.paymentservice.services.RefundJobService;
+import net.naour.paymentservice.services.RevenueService;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectMapper;
 
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/payments")
@@ -21,12 +40,26 @@ import java.util.Optional;
 @CrossOrigin(origins = "*")
 public class PaymentController {
     private final PaymentService paymentService;
+    private final RevenueService revenueService;
+    private final ObjectMapper objectMapper;
+    private final PaymentEventPublisher paymentEventPublisher;
+    private final RefundJobService refundJobService;
+
+    private static final String CSV_HEADER =
+            "id,rentalId,clientId,montant,methodePaiement,statut,transactionId,paymentIntentId,createdAt,paidAt";
+    private static final int EXPORT_FLUSH_EVERY = 100;
 
     @GetMapping
     public List<Payment> getAllPayments() {
         return paymentService.getAllPayments();
     }
 
+    // Flux SSE des changements de statut (optionnellement d'un seul client), à la place du polling
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeToStatusEvents(@RequestParam(required = false) Long clientId) {
+        return paymentEventPublisher.subscribe(clientId);
+    }
+
     @GetMapping("/{id}")
     public Optional<Payment> getPaymentById(@PathVariable Long id) {
         return paymentService.getPaymentById(id);
@@ -53,7 +86,7 @@ public class PaymentController {
     }
 
     @GetMapping("/transaction/{transactionId}")
-    public List<Payment> getPaymentByTransaction(@PathVariable String transactionId) {
+    public Optional<Payment> getPaymentByTransaction(@PathVariable String transactionId) {
         return paymentService.getPaymentByTransaction(transactionId);
     }
 
@@ -62,6 +95,24 @@ public class PaymentController {
         return paymentService.getTotalRevenue();
     }
 
+    @GetMapping("/revenue/daily")
+    public SortedMap<LocalDate, Double> getDailyRevenue(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        return revenueService.getDailyRevenue(startDate, endDate);
+    }
+
+    @GetMapping("/revenue/methode")
+    public Map<MethodePaiement, Double> getRevenueByMethode() {
+        return revenueService.getRevenueByMethode();
+    }
+
+    // Recalcule les compteurs de revenu depuis la table des paiements
+    @PostMapping("/revenue/rebuild")
+    public Double rebuildRevenue() {
+        return revenueService.rebuild();
+    }
+
     @GetMapping("/period")
     public List<Payment> getPaymentsByPeriod(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
@@ -69,10 +120,90 @@ public class PaymentController {
         return paymentService.getPaymentsBetweenDates(startDate, endDate);
     }
 
+    // Export pour le rapprochement : lu en flux depuis la base et écrit directement dans la réponse,
+    // en CSV ou NDJSON, compressé à la volée si le client accepte gzip
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportPayments(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) PaymentStatus statut,
+            @RequestParam(required = false) MethodePaiement methode,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean ndjson = switch (format.toLowerCase()) {
+            case "csv" -> false;
+            case "ndjson" -> true;
+            default -> throw new RuntimeException("Format d'export non supporté: " + format);
+        };
+        boolean gzip = accepteGzip(acceptEncoding);
+
+        StreamingResponseBody body = out -> {
+            // syncFlush : chaque flush envoie les lignes déjà compressées au client
+            OutputStream target = gzip ? new GZIPOutputStream(out, 8192, true) : out;
+            Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8));
+            if (!ndjson) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+            }
+            int[] count = {0};
+            paymentService.exportPayments(startDate, endDate, statut, methode, payment -> {
+                try {
+                    writer.write(ndjson ? objectMapper.writeValueAsString(payment) : toCsv(payment));
+                    writer.write('\n');
+                    if (++count[0] % EXPORT_FLUSH_EVERY == 0) {
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+            if (target instanceof GZIPOutputStream compressed) {
+                compressed.finish();
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("payments." + format.toLowerCase()).build().toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
     @PostMapping("/process")
-    public PaymentResponse processPayment(@RequestBody PaymentRequest request) {
-         return paymentService.processPayment(request);
+    public PaymentResponse processPayment(@RequestBody PaymentRequest request,
+                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+         return paymentService.processPayment(request, idempotencyKey);
+
+    }
+
+    // Renvoie immédiatement l'ID du paiement (202), le statut final se consulte via GET /payments/{id}
+    @PostMapping("/process/async")
+    public ResponseEntity<PaymentResponse> processPaymentAsync(
+            @RequestBody PaymentRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return ResponseEntity.accepted().body(paymentService.processPaymentAsync(request, idempotencyKey));
+    }
+
+    // Un résultat par paiement, dans l'ordre du lot
+    @PostMapping("/process/batch")
+    public List<PaymentResponse> processPaymentBatch(@RequestBody List<PaymentRequest> requests) {
+        return paymentService.processPaymentBatch(requests);
+    }
+
+    // Remboursement groupé en tâche de fond (202), avancement via GET /payments/refunds/{jobId}
+    @PostMapping("/refunds")
+    public ResponseEntity<RefundJob> submitBulkRefund(@RequestBody BulkRefundRequest request) {
+        return ResponseEntity.accepted().body(refundJobService.submit(request));
+    }
 
+    @GetMapping("/refunds/{jobId}")
+    public RefundJob getRefundJob(@PathVariable String jobId) {
+        return refundJobService.getJob(jobId);
     }
 
     @PostMapping("/{id}/refund")
@@ -80,8 +211,72 @@ public class PaymentController {
         return  paymentService.refundPayment(id);
     }
 
+    // Remboursement resté REMBOURSEMENT_EN_COURS (GET /payments/statut/REMBOURSEMENT_EN_COURS) :
+    // REMBOURSE si le fournisseur l'a effectué, sinon retour à REUSSI
+    @PostMapping("/{id}/refund/resolve")
+    public Payment resolveRefund(@PathVariable Long id, @RequestParam boolean rembourse) {
+        return paymentService.resolveRefund(id, rembourse);
+    }
+
     @PostMapping("/{id}/confirm")
     public Payment confirmManualPayment(@PathVariable Long id) {
         return paymentService.confirmManualPayment(id);
     }
-}
\ No newline at end of file
+
+    private static String toCsv(Payment payment) {
+        return String.join(",",
+                String.valueOf(payment.getId()),
+                String.valueOf(payment.getRentalId()),
+                String.valueOf(payment.getClientId()),
+                // Jamais de notation scientifique (1.0E7) dans le fichier de rapprochement
+                BigDecimal.valueOf(payment.getMontant()).toPlainString(),
+                csv(payment.getMethodePaiement()),
+                csv(payment.getStatut()),
+                csv(payment.getTransactionId()),
+                csv(payment.getPaymentIntentId()),
+                csv(payment.getCreatedAt()),
+                csv(payment.getPaidAt()));
+    }
+
+    // gzip (ou *) présent dans Accept-Encoding avec une q-value non nulle : "gzip;q=0" le refuse explicitement
+    private static boolean accepteGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double joker = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parties = element.split(";");
+            String codage = parties[0].trim().toLowerCase();
+            double q = 1.0;
+            for (int i = 1; i < parties.length; i++) {
+                String parametre = parties[i].trim().toLowerCase();
+                if (parametre.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(parametre.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (codage.equals("gzip") || codage.equals("x-gzip")) {
+                gzip = q;
+            } else if (codage.equals("*")) {
+                joker = q;
+            }
+        }
+        return gzip != null ? gzip > 0 : joker != null && joker > 0;
+    }
+
+    // Champ CSV vide si null, entre guillemets s'il contient un séparateur, un guillemet ou un saut de ligne
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.contains(",") || text.contains("\"") || text.contains("\n") || text.contains("\r")) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
+    }
+}
@@ -0,0 +1,28 @@
+package net.naour.paymentservice.controller;
+
+import lombok.RequiredArgsConstructor;
+import net.naour.paymentservice.services.VelocityGuard;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// /actuator/velocity : limites et refus ; /actuator/velocity/{clientId} : compteurs d'un client
+@Component
+@Endpoint(id = "velocity")
+@RequiredArgsConstructor
+public class VelocityEndpoint {
+    private final VelocityGuard velocityGuard;
+
+    @ReadOperation
+    public Map<String, Object> summary() {
+        return velocityGuard.summary();
+    }
+
+    @ReadOperation
+    public Map<String, Object> client(@Selector Long clientId) {
+        return velocityGuard.snapshot(clientId);
+    }
+}
@@ -0,0 +1,51 @@
+package net.naour.paymentservice.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Réponse enregistrée pour une clé Idempotency-Key.
+ * La ligne est créée (statut EN_COURS) avant l'appel au fournisseur : la clé primaire
+ * empêche deux instances de traiter la même clé en parallèle.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "idempotency_keys")
+public class IdempotencyRecord {
+    @Id
+    @Column(name = "idempotency_key", length = 128)
+    private String idempotencyKey;
+
+    // Empreinte SHA-256 (hexadécimal) des champs de la requête
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(name = "payment_id")
+    private Long paymentId;
+
+    @Column(name = "transaction_id")
+    private String transactionId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private PaymentStatus statut;
+
+    private String message;
+
+    private double montant;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Une version nulle signale une nouvelle ligne : l'insertion échoue si la clé existe déjà
+    @Version
+    private Long version;
+}
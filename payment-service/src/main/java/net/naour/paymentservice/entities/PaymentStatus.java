@@ -5,5 +5,6 @@ public enum PaymentStatus {
     EN_COURS,
     REUSSI,
     ECHOUE,
+    REMBOURSEMENT_EN_COURS,
     REMBOURSE
 }
@@ -0,0 +1,39 @@
+package net.naour.paymentservice.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Revenu des paiements réussis, agrégé par jour de paiement et par méthode.
+ * Mis à jour à chaque changement de statut, il remplace le SUM sur toute la table payments.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "revenue_rollups",
+        uniqueConstraints = @UniqueConstraint(name = "uk_revenue_jour_methode", columnNames = {"jour", "methode_paiement"}))
+public class RevenueRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate jour;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "methode_paiement", nullable = false)
+    private MethodePaiement methodePaiement;
+
+    @Column(nullable = false)
+    private double montant;
+
+    @Column(name = "nombre_paiements", nullable = false)
+    private long nombrePaiements;
+}
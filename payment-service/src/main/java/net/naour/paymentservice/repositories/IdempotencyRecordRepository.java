@@ -0,0 +1,27 @@
+package net.naour.paymentservice.repositories;
+
+import net.naour.paymentservice.entities.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@RepositoryRestResource(exported = false)
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    // Rattache la clé au paiement créé, dans la transaction qui l'enregistre
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.paymentId = :paymentId WHERE r.idempotencyKey = :key")
+    int attachPayment(@Param("key") String key, @Param("paymentId") Long paymentId);
+
+    // Supprime une réservation restée EN_COURS sans paiement (arrêt de l'instance pendant le traitement)
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.idempotencyKey = :key AND r.paymentId IS NULL " +
+            "AND r.statut = 'EN_COURS' AND r.createdAt < :before")
+    int deleteAbandoned(@Param("key") String key, @Param("before") LocalDateTime before);
+}
@@ -1,14 +1,22 @@
 package net.naour.paymentservice.repositories;
 import net.naour.paymentservice.entities.MethodePaiement;
 import net.naour.paymentservice.entities.PaymentStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import net.naour.paymentservice.entities.Payment;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.data.rest.core.annotation.RestResource;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 
 @RepositoryRestResource
@@ -24,15 +32,33 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     List<Payment> findByStatut(PaymentStatus statut);
 
     // Trouver un paiement par ID de transaction
-    List<Payment> findByTransactionId(String transactionId);
+    Optional<Payment> findByTransactionId(String transactionId);
 
     // Trouver les paiements par méthode
     List<Payment> findByMethodePaiement(MethodePaiement methode);
 
+    // Paiements désignés par ID ou par réservation, chargés en une requête et verrouillés en écriture
+    // jusqu'à la fin de la transaction (réservation avant un remboursement groupé)
+    @RestResource(exported = false)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Payment> findByIdInOrRentalIdIn(Collection<Long> ids, Collection<Long> rentalIds);
+
+    // Paiement verrouillé en écriture jusqu'à la fin de la transaction
+    @RestResource(exported = false)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Payment p WHERE p.id = :id")
+    Optional<Payment> findByIdForUpdate(@Param("id") Long id);
+
     // Calculer le revenu total des paiements réussis
-    @Query("SELECT SUM(p.montant) FROM Payment p WHERE p.statut = 'REUSSI'")
+    @Query("SELECT SUM(p.montant) FROM Payment p WHERE p.statut IN ('REUSSI', 'REMBOURSEMENT_EN_COURS')")
     Double getTotalRevenue();
 
+    // Paiements réussis (date, méthode, montant) pour reconstruire les agrégats de revenu ;
+    // un remboursement en cours compte encore dans le revenu tant qu'il n'est pas enregistré
+    @Query("SELECT p.paidAt, p.createdAt, p.methodePaiement, p.montant FROM Payment p " +
+            "WHERE p.statut IN ('REUSSI', 'REMBOURSEMENT_EN_COURS')")
+    Stream<Object[]> streamSuccessfulPaymentAmounts();
+
     // Trouver les paiements entre deux dates
     @Query("SELECT p FROM Payment p WHERE p.createdAt >= :startDate AND p.createdAt <= :endDate")
     List<Payment> findPaymentsBetweenDates(
@@ -40,6 +66,19 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
             @Param("endDate") LocalDateTime endDate
     );
 
+    // Lecture en flux pour l'export (à consommer dans une transaction), filtres statut et méthode optionnels
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query("SELECT p FROM Payment p WHERE p.createdAt >= :startDate AND p.createdAt <= :endDate " +
+            "AND (:statut IS NULL OR p.statut = :statut) " +
+            "AND (:methode IS NULL OR p.methodePaiement = :methode) ORDER BY p.id")
+    Stream<Payment> streamForExport(
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate,
+            @Param("statut") PaymentStatus statut,
+            @Param("methode") MethodePaiement methode
+    );
+
     // Trouver les paiements réussis pour une période
     @Query("SELECT p FROM Payment p WHERE p.statut = 'REUSSI' " +
             "AND p.paidAt >= :startDate AND p.paidAt <= :endDate")
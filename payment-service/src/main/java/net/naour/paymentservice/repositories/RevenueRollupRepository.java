@@ -0,0 +1,27 @@
+package net.naour.paymentservice.repositories;
+
+import net.naour.paymentservice.entities.MethodePaiement;
+import net.naour.paymentservice.entities.RevenueRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import java.time.LocalDate;
+
+@RepositoryRestResource(exported = false)
+public interface RevenueRollupRepository extends JpaRepository<RevenueRollup, Long> {
+
+    // Incrément atomique d'un compteur existant ; renvoie 0 si la ligne n'existe pas encore
+    @Modifying
+    @Query("UPDATE RevenueRollup r SET r.montant = r.montant + :montant, " +
+            "r.nombrePaiements = r.nombrePaiements + :nombre " +
+            "WHERE r.jour = :jour AND r.methodePaiement = :methode")
+    int increment(
+            @Param("jour") LocalDate jour,
+            @Param("methode") MethodePaiement methode,
+            @Param("montant") double montant,
+            @Param("nombre") long nombre
+    );
+}
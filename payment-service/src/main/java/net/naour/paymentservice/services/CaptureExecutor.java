@@ -0,0 +1,63 @@
+package net.naour.paymentservice.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Exécute les appels au fournisseur d'un lot de paiements en parallèle, avec au plus
+ * payment.batch.max-parallelism appels en cours par lot pour ne pas saturer le fournisseur.
+ * Les appels tournent sur des threads virtuels dédiés et non sur le pool de tâches partagé :
+ * l'appelant, souvent lui-même une tâche de ce pool, peut attendre les résultats sans risquer de l'épuiser.
+ */
+@Component
+public class CaptureExecutor {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int maxParallelism;
+
+    public CaptureExecutor(@Value("${payment.batch.max-parallelism:8}") int maxParallelism) {
+        this.maxParallelism = maxParallelism;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Résultats dans l'ordre des éléments ; la fonction doit gérer ses propres erreurs
+    public <T, R> List<R> map(List<T> items, Function<T, R> call) {
+        Semaphore permits = new Semaphore(maxParallelism);
+        List<CompletableFuture<R>> futures = new ArrayList<>(items.size());
+
+        for (T item : items) {
+            // Le thread appelant attend un permis avant de soumettre : au plus maxParallelism appels en vol
+            permits.acquireUninterruptibly();
+            CompletableFuture<R> future = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    try {
+                        future.complete(call.apply(item));
+                    } catch (RuntimeException e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                future.completeExceptionally(e);
+            }
+            futures.add(future);
+        }
+
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+}
@@ -0,0 +1,113 @@
+package net.naour.paymentservice.services;
+
+import java.time.Duration;
+
+/**
+ * Disjoncteur sur une fenêtre glissante des derniers appels.
+ * FERME : les appels passent ; au-delà du taux d'échec toléré il s'OUVRE et refuse tout
+ * pendant openDuration ; il passe ensuite SEMI_OUVERT et laisse passer un seul appel d'essai
+ * dont le résultat le referme ou le rouvre.
+ */
+class CircuitBreaker {
+    enum State { FERME, OUVERT, SEMI_OUVERT }
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openDurationNanos;
+
+    private State state = State.FERME;
+    private int index;
+    private int calls;
+    private int failures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, Duration openDuration) {
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+    }
+
+    synchronized boolean tryAcquire() {
+        if (state == State.OUVERT) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                return false;
+            }
+            state = State.SEMI_OUVERT;
+            probeInFlight = false;
+        }
+        if (state == State.SEMI_OUVERT) {
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+        }
+        return true;
+    }
+
+    // Appel autorisé mais finalement pas effectué : ne compte ni comme succès ni comme échec
+    synchronized void release() {
+        if (state == State.SEMI_OUVERT) {
+            probeInFlight = false;
+        }
+    }
+
+    synchronized void onSuccess() {
+        if (state == State.SEMI_OUVERT) {
+            close();
+        } else if (state == State.FERME) {
+            record(false);
+        }
+    }
+
+    synchronized void onFailure() {
+        if (state == State.SEMI_OUVERT) {
+            open();
+        } else if (state == State.FERME) {
+            record(true);
+            if (calls >= minimumCalls && failures * 100 >= failureRateThreshold * calls) {
+                open();
+            }
+        }
+    }
+
+    // Vrai tant que le circuit refuse les appels, sans consommer l'appel d'essai
+    synchronized boolean isOpen() {
+        return state == State.OUVERT && System.nanoTime() - openedAt < openDurationNanos;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (calls == window.length) {
+            if (window[index]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[index] = failure;
+        if (failure) {
+            failures++;
+        }
+        index = (index + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OUVERT;
+        openedAt = System.nanoTime();
+        probeInFlight = false;
+    }
+
+    private void close() {
+        state = State.FERME;
+        index = 0;
+        calls = 0;
+        failures = 0;
+        probeInFlight = false;
+    }
+}
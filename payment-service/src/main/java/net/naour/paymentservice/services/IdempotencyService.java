@@ -0,0 +1,192 @@
+package net.naour.paymentservice.services;
+
+import lombok.extern.slf4j.Slf4j;
+import net.naour.paymentservice.DTO.PaymentRequest;
+import net.naour.paymentservice.DTO.PaymentResponse;
+import net.naour.paymentservice.entities.IdempotencyRecord;
+import net.naour.paymentservice.entities.PaymentStatus;
+import net.naour.paymentservice.repositories.IdempotencyRecordRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Déduplication des requêtes de paiement par clé Idempotency-Key.
+ * Les réponses récentes sont gardées dans un cache LRU borné, toutes sont persistées en base ;
+ * les doublons concurrents attendent le résultat du premier appel au lieu de rappeler le fournisseur.
+ * La clé est rattachée au paiement dès sa création : après un échec en cours de traitement, une reprise
+ * renvoie ce paiement au lieu d'en créer un second. Une réservation restée EN_COURS sans paiement
+ * (arrêt de l'instance) expire après payment.idempotency.pending-expiry.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+    private final IdempotencyRecordRepository recordRepository;
+    private final Map<String, IdempotencyRecord> recentRecords;
+    private final Map<String, CompletableFuture<PaymentResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Duration pendingExpiry;
+
+    public IdempotencyService(IdempotencyRecordRepository recordRepository,
+                              @Value("${payment.idempotency.cache-size:10000}") int cacheSize,
+                              @Value("${payment.idempotency.pending-expiry:5m}") Duration pendingExpiry) {
+        this.recordRepository = recordRepository;
+        this.pendingExpiry = pendingExpiry;
+        this.recentRecords = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public PaymentResponse execute(String key, PaymentRequest request, Supplier<PaymentResponse> action) {
+        String requestHash = empreinte(request);
+
+        IdempotencyRecord recent = recentRecords.get(key);
+        if (recent != null) {
+            return toResponse(recent, requestHash);
+        }
+
+        CompletableFuture<PaymentResponse> mine = new CompletableFuture<>();
+        CompletableFuture<PaymentResponse> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            // Doublon concurrent sur cette instance : même résultat (ou même exception) que le premier appel
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            PaymentResponse response = executeOnce(key, requestHash, action);
+            mine.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private PaymentResponse executeOnce(String key, String requestHash, Supplier<PaymentResponse> action) {
+        IdempotencyRecord stored = recordRepository.findById(key).orElse(null);
+        if (stored != null && abandonnee(stored)) {
+            // Aucun paiement n'a été créé : la clé est reprise (une autre instance peut la reprendre
+            // en même temps, l'insertion ci-dessous n'en laisse passer qu'une)
+            log.warn("Réservation abandonnée de la clé {} reprise", key);
+            recordRepository.deleteAbandoned(key, LocalDateTime.now().minus(pendingExpiry));
+            stored = null;
+        }
+        if (stored != null) {
+            remember(stored);
+            return toResponse(stored, requestHash);
+        }
+
+        // Réserver la clé avant d'appeler le fournisseur
+        IdempotencyRecord record = IdempotencyRecord.builder()
+                .idempotencyKey(key)
+                .requestHash(requestHash)
+                .statut(PaymentStatus.EN_COURS)
+                .message("Paiement en cours de traitement")
+                .createdAt(LocalDateTime.now())
+                .build();
+        try {
+            recordRepository.saveAndFlush(record);
+        } catch (DataIntegrityViolationException e) {
+            // Clé réservée entre-temps par une autre instance
+            return recordRepository.findById(key)
+                    .map(other -> toResponse(other, requestHash))
+                    .orElseThrow(() -> e);
+        }
+
+        PaymentResponse response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            IdempotencyRecord current = recordRepository.findById(key).orElse(null);
+            if (current == null || current.getPaymentId() == null) {
+                // Aucun paiement créé (refus immédiat avant l'enregistrement) : la clé peut être réutilisée
+                recordRepository.deleteById(key);
+            } else {
+                // Paiement créé, peut-être déjà capturé : la clé reste rattachée au paiement,
+                // une reprise le renvoie au lieu de débiter une seconde fois
+                log.error("Échec après la création du paiement {} (clé {}): {}", current.getPaymentId(), key,
+                        e.getMessage());
+                current.setMessage("Résultat du paiement incertain, consultez le paiement " + current.getPaymentId());
+                remember(recordRepository.save(current));
+            }
+            throw e;
+        }
+
+        record.setPaymentId(response.getPaymentId());
+        record.setTransactionId(response.getTransactionId());
+        record.setStatut(response.getStatut());
+        record.setMessage(response.getMessage());
+        record.setMontant(response.getMontant());
+        remember(recordRepository.save(record));
+        return response;
+    }
+
+    // À appeler dans la transaction qui enregistre le paiement de cette clé
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void attacherPaiement(String key, Long paymentId) {
+        recordRepository.attachPayment(key, paymentId);
+    }
+
+    private boolean abandonnee(IdempotencyRecord record) {
+        return record.getStatut() == PaymentStatus.EN_COURS && record.getPaymentId() == null
+                && record.getCreatedAt().isBefore(LocalDateTime.now().minus(pendingExpiry));
+    }
+
+    private void remember(IdempotencyRecord record) {
+        if (record.getStatut() != PaymentStatus.EN_COURS || record.getPaymentId() != null) {
+            recentRecords.put(record.getIdempotencyKey(), record);
+        }
+    }
+
+    private PaymentResponse toResponse(IdempotencyRecord record, String requestHash) {
+        if (!record.getRequestHash().equals(requestHash)) {
+            throw new RuntimeException("Cette Idempotency-Key a déjà été utilisée pour une autre requête");
+        }
+        return PaymentResponse.builder()
+                .paymentId(record.getPaymentId())
+                .transactionId(record.getTransactionId())
+                .statut(record.getStatut())
+                .message(record.getMessage())
+                .montant(record.getMontant())
+                .build();
+    }
+
+    // Empreinte résistante aux collisions : deux requêtes différentes ne partagent pas une clé par accident
+    static String empreinte(PaymentRequest request) {
+        String champs = request.getRentalId() + "|" + request.getClientId() + "|" + request.getMontant() + "|"
+                + request.getMethodePaiement();
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(champs.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -2,16 +2,20 @@ package net.naour.paymentservice.services;
 
 import net.naour.paymentservice.DTO.PaymentRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import java.util.UUID;
 
+// Fournisseur par défaut ; payment.provider.type=simulator sélectionne SimulatedPaymentProvider
 @Service
+@ConditionalOnProperty(name = "payment.provider.type", havingValue = "paypal", matchIfMissing = true)
 @Slf4j
-public class PayPalService {
+public class PayPalService implements PaymentProvider {
 
 
      //Simule la création d'une commande PayPal
 
+    @Override
     public String createOrder(PaymentRequest request) {
         log.info("PAYPAL: Création d'une commande pour " + request.getMontant() + "DIRHAM" );
 
@@ -24,6 +28,7 @@ public class PayPalService {
 
     // Simule la capture d'un paiement PayPal
 
+    @Override
     public boolean capturePayment(String orderId) {
         log.info("PAYPAL: Capture du paiement: " +  orderId);
 
@@ -42,6 +47,7 @@ public class PayPalService {
 
      //Simule un remboursement PayPal
 
+    @Override
     public boolean refund(String orderId, double amount) {
         log.info("PAYPAL: Demande de remboursement de" + amount +  "EUR pour"+ orderId);
 
@@ -0,0 +1,50 @@
+package net.naour.paymentservice.services;
+
+import jakarta.annotation.PreDestroy;
+import net.naour.eventstream.SseBroadcaster;
+import net.naour.paymentservice.DTO.PaymentStatusEvent;
+import net.naour.paymentservice.entities.Payment;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Diffusion SSE des changements de statut des paiements, à la place du polling de GET /payments/{id}.
+ * Abonnés filtrés par client, tampon borné par abonné (payment.events.buffer-size) : voir SseBroadcaster.
+ */
+@Component
+public class PaymentEventPublisher {
+    private final SseBroadcaster<PaymentStatusEvent, Long> broadcaster;
+
+    public PaymentEventPublisher(@Value("${payment.events.buffer-size:64}") int bufferSize,
+                                 @Value("${payment.events.max-subscribers:1000}") int maxSubscribers,
+                                 @Value("${payment.events.timeout:30m}") Duration timeout,
+                                 @Value("${payment.events.heartbeat:15s}") Duration heartbeat) {
+        this.broadcaster = new SseBroadcaster<>("payment-status", PaymentStatusEvent::getClientId,
+                bufferSize, maxSubscribers, timeout, heartbeat);
+    }
+
+    // clientId null : tous les événements
+    public SseEmitter subscribe(Long clientId) {
+        return broadcaster.subscribe(clientId);
+    }
+
+    // Instantané pris maintenant : le paiement peut encore être modifié avant le commit
+    public void publish(Payment payment) {
+        publish(new PaymentStatusEvent(payment.getId(), payment.getRentalId(), payment.getClientId(),
+                payment.getStatut(), payment.getTransactionId(), payment.getMontant(), LocalDateTime.now()));
+    }
+
+    // Publié après le commit : un abonné ne voit jamais un statut annulé par un rollback
+    public void publish(PaymentStatusEvent event) {
+        broadcaster.publish(event);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        broadcaster.shutdown();
+    }
+}
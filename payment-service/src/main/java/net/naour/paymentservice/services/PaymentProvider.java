@@ -0,0 +1,18 @@
+package net.naour.paymentservice.services;
+
+import net.naour.paymentservice.DTO.PaymentRequest;
+
+/**
+ * Fournisseur de paiement externe. PaymentService n'y accède qu'à travers PaymentProviderGateway ;
+ * l'implémentation est choisie par payment.provider.type (paypal par défaut, simulator).
+ */
+public interface PaymentProvider {
+
+    // Crée la commande chez le fournisseur et renvoie son identifiant de transaction
+    String createOrder(PaymentRequest request);
+
+    // Vrai si le paiement est capturé, faux s'il est refusé
+    boolean capturePayment(String orderId);
+
+    boolean refund(String orderId, double amount);
+}
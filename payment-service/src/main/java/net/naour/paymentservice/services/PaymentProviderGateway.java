@@ -0,0 +1,160 @@
+package net.naour.paymentservice.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.naour.paymentservice.DTO.PaymentRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Point de passage unique des appels au fournisseur de paiement.
+ * Chaque appel est isolé : au plus payment.provider.max-concurrent-calls en parallèle (bulkhead),
+ * limité à payment.provider.timeout, et refusé immédiatement quand le disjoncteur est ouvert.
+ * Les latences par opération sont publiées dans payment.provider.latency (actuator/metrics).
+ */
+@Component
+@Slf4j
+public class PaymentProviderGateway {
+    private final PaymentProvider provider;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore bulkhead;
+    private final Duration maxWait;
+    private final Duration timeout;
+    private final CircuitBreaker circuitBreaker;
+
+    public PaymentProviderGateway(PaymentProvider provider,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${payment.provider.max-concurrent-calls:20}") int maxConcurrentCalls,
+                                  @Value("${payment.provider.max-wait:100ms}") Duration maxWait,
+                                  @Value("${payment.provider.timeout:2s}") Duration timeout,
+                                  @Value("${payment.provider.circuit.window-size:20}") int windowSize,
+                                  @Value("${payment.provider.circuit.minimum-calls:10}") int minimumCalls,
+                                  @Value("${payment.provider.circuit.failure-rate-threshold:50}") int failureRateThreshold,
+                                  @Value("${payment.provider.circuit.open-duration:30s}") Duration openDuration) {
+        this.provider = provider;
+        this.meterRegistry = meterRegistry;
+        this.bulkhead = new Semaphore(maxConcurrentCalls);
+        this.maxWait = maxWait;
+        this.timeout = timeout;
+        this.circuitBreaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, openDuration);
+
+        Gauge.builder("payment.provider.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("État du disjoncteur : 0 fermé, 1 ouvert, 2 semi-ouvert")
+                .register(meterRegistry);
+        Gauge.builder("payment.provider.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .register(meterRegistry);
+    }
+
+    public String createOrder(PaymentRequest request) {
+        return call("createOrder", () -> provider.createOrder(request));
+    }
+
+    public boolean capturePayment(String orderId) {
+        return call("capturePayment", () -> provider.capturePayment(orderId));
+    }
+
+    public boolean refund(String orderId, double amount) {
+        return call("refund", () -> provider.refund(orderId, amount));
+    }
+
+    // Faux tant que le disjoncteur est ouvert : permet de répondre sans rien enregistrer
+    public boolean isAvailable() {
+        return !circuitBreaker.isOpen();
+    }
+
+    private <T> T call(String operation, Supplier<T> action) {
+        if (!circuitBreaker.tryAcquire()) {
+            rejected(operation, "circuit_open");
+            throw new ProviderUnavailableException("Fournisseur de paiement indisponible (circuit ouvert)");
+        }
+
+        boolean permit;
+        try {
+            permit = bulkhead.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            circuitBreaker.release();
+            throw new ProviderUnavailableException("Appel au fournisseur de paiement interrompu");
+        }
+        if (!permit) {
+            circuitBreaker.release();
+            rejected(operation, "bulkhead_full");
+            throw new ProviderUnavailableException("Trop d'appels simultanés au fournisseur de paiement");
+        }
+
+        long start = System.nanoTime();
+        String outcome = "success";
+        Future<T> future;
+        try {
+            // Le permis est rendu quand l'appel se termine vraiment, pas quand on cesse de l'attendre :
+            // un appel abandonné après le délai occupe toujours le fournisseur
+            future = executor.submit(() -> {
+                try {
+                    return action.get();
+                } finally {
+                    bulkhead.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            bulkhead.release();
+            circuitBreaker.release();
+            throw new ProviderUnavailableException("Appel au fournisseur de paiement refusé (arrêt en cours)");
+        }
+        try {
+            T result = future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            outcome = "timeout";
+            circuitBreaker.onFailure();
+            log.warn("Fournisseur de paiement: " + operation + " a dépassé " + timeout.toMillis() + " ms");
+            throw new ProviderTimeoutException(
+                    "Délai dépassé pour le fournisseur de paiement (" + timeout.toMillis() + " ms)");
+        } catch (ExecutionException e) {
+            outcome = "error";
+            circuitBreaker.onFailure();
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            outcome = "interrupted";
+            Thread.currentThread().interrupt();
+            circuitBreaker.release();
+            throw new ProviderUnavailableException("Appel au fournisseur de paiement interrompu");
+        } finally {
+            Timer.builder("payment.provider.latency")
+                    .description("Latence des appels au fournisseur de paiement")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void rejected(String operation, String reason) {
+        Counter.builder("payment.provider.rejected")
+                .tag("operation", operation)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,22 +1,40 @@
 package net.naour.paymentservice.services;
 
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.naour.paymentservice.DTO.*;
 import net.naour.paymentservice.entities.*;
 import net.naour.paymentservice.repositories.PaymentRepository;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class PaymentService {
     private final PaymentRepository paymentRepository;
-    private final PayPalService payPalService;
+    private final PaymentProviderGateway providerGateway;
+    private final TaskExecutor taskExecutor;
+    private final IdempotencyService idempotencyService;
+    private final RevenueService revenueService;
+    private final TransactionTemplate transactionTemplate;
+    private final CaptureExecutor captureExecutor;
+    private final EntityManager entityManager;
+    private final PaymentEventPublisher eventPublisher;
+    private final TransactionIdIndex transactionIdIndex;
+    private final VelocityGuard velocityGuard;
+
+    // Taille maximale d'un lot pour POST /payments/process/batch
+    private static final int MAX_BATCH_SIZE = 500;
 
     public List<Payment> getAllPayments() {
         return paymentRepository.findAll();
@@ -42,25 +60,249 @@ public class PaymentService {
         return paymentRepository.findByMethodePaiement(methode);
     }
 
-    public List<Payment> getPaymentByTransaction(String transactionId) {
-        return paymentRepository.findByTransactionId(transactionId);
+    // Paiements récents résolus par l'index mémoire puis par clé primaire, les autres par l'index unique
+    public Optional<Payment> getPaymentByTransaction(String transactionId) {
+        Long paymentId = transactionIdIndex.get(transactionId);
+        if (paymentId != null) {
+            Optional<Payment> payment = paymentRepository.findById(paymentId);
+            if (payment.isPresent() && transactionId.equals(payment.get().getTransactionId())) {
+                return payment;
+            }
+            transactionIdIndex.remove(transactionId);
+        }
+
+        Optional<Payment> payment = paymentRepository.findByTransactionId(transactionId);
+        payment.ifPresent(found -> transactionIdIndex.put(transactionId, found.getId()));
+        return payment;
     }
 
     public Double getTotalRevenue() {
-        Double revenue = paymentRepository.getTotalRevenue();
-        return revenue != null ? revenue : 0.0;
+        return revenueService.getTotalRevenue();
     }
 
     public List<Payment> getPaymentsBetweenDates(LocalDateTime startDate, LocalDateTime endDate) {
         return paymentRepository.findPaymentsBetweenDates(startDate, endDate);
     }
 
+    // Export en flux : chaque paiement est transmis puis détaché, la mémoire reste constante
+    public void exportPayments(LocalDateTime startDate, LocalDateTime endDate, PaymentStatus statut,
+                               MethodePaiement methode, Consumer<Payment> sink) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> {
+            try (Stream<Payment> payments = paymentRepository.streamForExport(startDate, endDate, statut, methode)) {
+                payments.forEach(payment -> {
+                    sink.accept(payment);
+                    entityManager.detach(payment);
+                });
+            }
+        });
+    }
+
     //Traiter un nouveau paiement
-    @Transactional
+    // Pas de @Transactional ici : l'appel au fournisseur se fait hors transaction, entre deux
+    // écritures courtes (EN_COURS puis résultat), pour ne pas bloquer une connexion du pool.
     public PaymentResponse processPayment(PaymentRequest request) {
+        valider(request);
+        PaymentResponse refus = refusImmediat(request);
+        if (refus != null) {
+            return refus;
+        }
+        return traiter(request, null);
+    }
+
+    // Avec une Idempotency-Key, une requête rejouée renvoie la réponse d'origine sans rappeler le fournisseur
+    public PaymentResponse processPayment(PaymentRequest request, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return processPayment(request);
+        }
+        valider(request);
+        return idempotent(idempotencyKey, request, this::traiter);
+    }
+
+    public PaymentResponse processPaymentAsync(PaymentRequest request, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return processPaymentAsync(request);
+        }
+        valider(request);
+        return idempotent(idempotencyKey, request, this::traiterAsync);
+    }
+
+    // La clé est cherchée d'abord (réponse mémorisée ou appel en cours) : une requête rejouée retrouve
+    // sa réponse même si le disjoncteur s'est ouvert depuis, et ne consomme pas le quota de vélocité.
+    // Seule une clé nouvelle passe par refusImmediat ; un refus immédiat n'est pas mémorisé,
+    // la même clé pourra être rejouée plus tard.
+    private PaymentResponse idempotent(String idempotencyKey, PaymentRequest request,
+                                       BiFunction<PaymentRequest, String, PaymentResponse> traitement) {
+        try {
+            return idempotencyService.execute(idempotencyKey, request, () -> {
+                PaymentResponse refus = refusImmediat(request);
+                if (refus != null) {
+                    throw new RefusImmediatException(refus);
+                }
+                return traitement.apply(request, idempotencyKey);
+            });
+        } catch (RefusImmediatException e) {
+            return e.getResponse();
+        }
+    }
+
+    // Mode asynchrone : renvoie tout de suite l'ID du paiement EN_COURS, le résultat
+    // est ensuite consultable via GET /payments/{id}
+    public PaymentResponse processPaymentAsync(PaymentRequest request) {
+        valider(request);
+        PaymentResponse refus = refusImmediat(request);
+        if (refus != null) {
+            return refus;
+        }
+        return traiterAsync(request, null);
+    }
+
+    private PaymentResponse traiter(PaymentRequest request, String idempotencyKey) {
+        Payment payment = enregistrerPaiement(request, idempotencyKey);
+        return executerPaiement(payment, request);
+    }
+
+    private PaymentResponse traiterAsync(PaymentRequest request, String idempotencyKey) {
+        Payment payment = enregistrerPaiement(request, idempotencyKey);
+        taskExecutor.execute(() -> executerPaiement(payment, request));
+
+        return PaymentResponse.builder()
+                .paymentId(payment.getId())
+                .statut(PaymentStatus.EN_COURS)
+                .message("Paiement en cours de traitement")
+                .montant(request.getMontant())
+                .build();
+    }
+
+    // Traiter un lot de paiements : une transaction pour les insertions (batch JDBC),
+    // les appels au fournisseur en parallèle borné, puis une transaction pour les résultats.
+    // Renvoie un résultat par requête, dans l'ordre ; une requête invalide n'empêche pas les autres.
+    public List<PaymentResponse> processPaymentBatch(List<PaymentRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new RuntimeException("Le lot de paiements est vide");
+        }
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new RuntimeException("Un lot ne peut pas dépasser " + MAX_BATCH_SIZE + " paiements");
+        }
+
+        log.info("Traitement d'un lot de " + requests.size() + " paiements");
+
+        PaymentResponse[] responses = new PaymentResponse[requests.size()];
+        List<Integer> valides = new ArrayList<>();
+        List<Payment> payments = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                Payment payment = nouveauPaiement(requests.get(i));
+                PaymentResponse refus = refusImmediat(requests.get(i));
+                if (refus != null) {
+                    responses[i] = refus;
+                    continue;
+                }
+                payments.add(payment);
+                valides.add(i);
+            } catch (RuntimeException e) {
+                responses[i] = PaymentResponse.builder()
+                        .statut(PaymentStatus.ECHOUE)
+                        .message(e.getMessage())
+                        .montant(requests.get(i) != null ? requests.get(i).getMontant() : 0)
+                        .build();
+            }
+        }
+
+        if (!payments.isEmpty()) {
+            List<Payment> saved = transactionTemplate.execute(status -> paymentRepository.saveAll(payments));
+            saved.forEach(eventPublisher::publish);
+
+            List<Integer> positions = IntStream.range(0, saved.size()).boxed().toList();
+            List<PaymentResponse> resultats = captureExecutor.map(positions, j ->
+                    appelerFournisseur(saved.get(j), requests.get(valides.get(j))));
+            enregistrerResultats(saved);
+
+            for (int j = 0; j < valides.size(); j++) {
+                responses[valides.get(j)] = resultats.get(j);
+            }
+        }
+
+        return Arrays.asList(responses);
+    }
+
+    // Échec immédiat d'une requête validée et nouvelle, sans enregistrer de paiement ni appeler le fournisseur :
+    // disjoncteur du fournisseur ouvert ou rafale anormale du client (contrôle de vélocité).
+    // La vélocité est contrôlée en dernier : seules les requêtes qui vont être traitées consomment le quota.
+    private PaymentResponse refusImmediat(PaymentRequest request) {
+        String motif;
+        if (!providerGateway.isAvailable()
+                && (request.getMethodePaiement() == MethodePaiement.CARTE_CREDIT
+                || request.getMethodePaiement() == MethodePaiement.PAYPAL)) {
+            motif = "Fournisseur de paiement momentanément indisponible. Veuillez réessayer plus tard.";
+        } else {
+            motif = velocityGuard.check(request.getClientId(), request.getMontant());
+        }
+        if (motif == null) {
+            return null;
+        }
+
+        log.warn("Paiement refusé sans appel au fournisseur (client " + request.getClientId() + "): " + motif);
+        return PaymentResponse.builder()
+                .statut(PaymentStatus.ECHOUE)
+                .message(motif)
+                .montant(request.getMontant())
+                .build();
+    }
+
+    // Refus immédiat d'une clé nouvelle : libère la clé dans IdempotencyService sans mémoriser la réponse
+    private static final class RefusImmediatException extends RuntimeException {
+        private final PaymentResponse response;
+
+        private RefusImmediatException(PaymentResponse response) {
+            super(response.getMessage());
+            this.response = response;
+        }
+
+        private PaymentResponse getResponse() {
+            return response;
+        }
+    }
+
+    // Première transaction courte : validation et enregistrement du paiement EN_COURS.
+    // Avec une Idempotency-Key, la clé est rattachée au paiement dans la même transaction.
+    private Payment enregistrerPaiement(PaymentRequest request, String idempotencyKey) {
         log.info("Traitement d'un paiement de " + request.getMontant() + "DIRHAM via" + request.getMethodePaiement()
         );
 
+        Payment savedPayment = transactionTemplate.execute(status -> {
+            Payment payment = paymentRepository.save(nouveauPaiement(request));
+            if (idempotencyKey != null) {
+                idempotencyService.attacherPaiement(idempotencyKey, payment.getId());
+            }
+            return payment;
+        });
+        log.info("Paiement enregistré avec l'ID: " + savedPayment.getId());
+        eventPublisher.publish(savedPayment);
+        return savedPayment;
+    }
+
+    // Validation de la requête et création de l'entité Payment EN_COURS (non enregistrée)
+    private Payment nouveauPaiement(PaymentRequest request) {
+        valider(request);
+
+        // Créer l'entité Payment
+        Payment payment = new Payment();
+        payment.setRentalId(request.getRentalId());
+        payment.setClientId(request.getClientId());
+        payment.setMontant(request.getMontant());
+        payment.setMethodePaiement(request.getMethodePaiement());
+        payment.setStatut(PaymentStatus.EN_COURS);
+        payment.setCreatedAt(LocalDateTime.now());
+        return payment;
+    }
+
+    private void valider(PaymentRequest request) {
+        if (request == null) {
+            throw new RuntimeException("La requête de paiement est obligatoire");
+        }
+
         // Validation du montant
         if (request.getMontant() <= 0) {
             throw new RuntimeException("Le montant doit être positif");
@@ -74,17 +316,20 @@ public class PaymentService {
             throw new RuntimeException("L'ID du client est obligatoire");
         }
 
-        // Créer l'entité Payment
-        Payment payment = new Payment();
-        payment.setRentalId(request.getRentalId());
-        payment.setClientId(request.getClientId());
-        payment.setMontant(request.getMontant());
-        payment.setMethodePaiement(request.getMethodePaiement());
-        payment.setStatut(PaymentStatus.EN_COURS);
+        if (request.getMethodePaiement() == null) {
+            throw new RuntimeException("La méthode de paiement est obligatoire");
+        }
+    }
 
-        Payment savedPayment = paymentRepository.save(payment);
-        log.info("Paiement enregistré avec l'ID: " + savedPayment.getId());
+    // Appel au fournisseur hors transaction, puis seconde transaction courte pour le résultat
+    private PaymentResponse executerPaiement(Payment payment, PaymentRequest request) {
+        PaymentResponse response = appelerFournisseur(payment, request);
+        enregistrerResultats(List.of(payment));
+        return response;
+    }
 
+    // Appel au fournisseur : met à jour le paiement en mémoire et construit la réponse, sans rien enregistrer
+    private PaymentResponse appelerFournisseur(Payment payment, PaymentRequest request) {
         try {
             String transactionId;
             boolean success;
@@ -94,14 +339,16 @@ public class PaymentService {
             switch (request.getMethodePaiement()) {
                 case CARTE_CREDIT:
                 case PAYPAL:
-                    transactionId = payPalService.createOrder(request);
-                    success = payPalService.capturePayment(transactionId);
+                    transactionId = providerGateway.createOrder(request);
+                    // Gardé avant la capture : sans réponse de sa part, la commande reste à rapprocher
+                    payment.setTransactionId(transactionId);
+                    success = providerGateway.capturePayment(transactionId);
                     break;
 
                 case VIREMENT_BANCAIRE:
                 case ESPECES:
 
-                    transactionId = "MANUAL-" + savedPayment.getId();
+                    transactionId = "MANUAL-" + payment.getId();
                     success = true;
                     payment.setStatut(PaymentStatus.EN_ATTENTE);
                     log.info("Paiement manuel - en attente de confirmation");
@@ -116,12 +363,11 @@ public class PaymentService {
             if (success) {
                 payment.setStatut(PaymentStatus.REUSSI);
                 payment.setPaidAt(LocalDateTime.now());
-                paymentRepository.save(payment);
 
-                log.info("Paiement " + savedPayment.getId() + " traité avec succès");
+                log.info("Paiement " + payment.getId() + " traité avec succès");
 
                 return PaymentResponse.builder()
-                        .paymentId(savedPayment.getId())
+                        .paymentId(payment.getId())
                         .transactionId(transactionId)
                         .statut(PaymentStatus.REUSSI)
                         .message("Paiement effectué avec succès")
@@ -130,12 +376,11 @@ public class PaymentService {
                         .build();
             } else {
                 payment.setStatut(PaymentStatus.ECHOUE);
-                paymentRepository.save(payment);
 
-                log.warn("Échec du paiement " + savedPayment.getId());
+                log.warn("Échec du paiement " + payment.getId());
 
                 return PaymentResponse.builder()
-                        .paymentId(savedPayment.getId())
+                        .paymentId(payment.getId())
                         .transactionId(transactionId)
                         .statut(PaymentStatus.ECHOUE)
                         .message("Le paiement a échoué. Veuillez réessayer.")
@@ -144,13 +389,27 @@ public class PaymentService {
             }
 
         } catch (Exception e) {
+            if (e instanceof ProviderTimeoutException && payment.getTransactionId() != null) {
+                // Capture sans réponse : le fournisseur a pu débiter le client, le paiement reste EN_COURS
+                // avec sa commande au lieu d'être marqué ECHOUE et relancé
+                log.warn("Paiement " + payment.getId() + " à rapprocher avec la commande " + payment.getTransactionId()
+                        + ": " + e.getMessage());
+
+                return PaymentResponse.builder()
+                        .paymentId(payment.getId())
+                        .transactionId(payment.getTransactionId())
+                        .statut(PaymentStatus.EN_COURS)
+                        .message("Capture sans réponse du fournisseur, paiement à rapprocher (commande "
+                                + payment.getTransactionId() + ")")
+                        .montant(request.getMontant())
+                        .build();
+            }
             payment.setStatut(PaymentStatus.ECHOUE);
-            paymentRepository.save(payment);
 
             log.error("Erreur lors du traitement du paiement:" + e.getMessage());
 
             return PaymentResponse.builder()
-                    .paymentId(savedPayment.getId())
+                    .paymentId(payment.getId())
                     .statut(PaymentStatus.ECHOUE)
                     .message("Erreur lors du traitement: " + e.getMessage())
                     .montant(request.getMontant())
@@ -158,50 +417,106 @@ public class PaymentService {
         }
     }
 
+    // Seconde transaction courte : reporte les résultats sur les entités chargées en une requête,
+    // les mises à jour partent en batch JDBC au flush, puis les compteurs de revenu sont incrémentés
+    private void enregistrerResultats(List<Payment> payments) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<Long, Payment> managed = new HashMap<>();
+            paymentRepository.findAllById(payments.stream().map(Payment::getId).toList())
+                    .forEach(payment -> managed.put(payment.getId(), payment));
+
+            List<Payment> reussis = new ArrayList<>();
+            for (Payment payment : payments) {
+                Payment current = managed.get(payment.getId());
+                current.setStatut(payment.getStatut());
+                current.setTransactionId(payment.getTransactionId());
+                current.setPaidAt(payment.getPaidAt());
+                eventPublisher.publish(current);
+                if (current.getStatut() == PaymentStatus.REUSSI) {
+                    reussis.add(current);
+                }
+            }
+            paymentRepository.flush();
 
-    @Transactional
-    public Payment refundPayment(Long paymentId) {
-        Payment payment = paymentRepository.findById(paymentId)
-                .orElseThrow(() -> new RuntimeException("Paiement non trouvé avec l'ID: " + paymentId));
+            if (!reussis.isEmpty()) {
+                revenueService.paiementsReussis(reussis);
+            }
+        });
+        // Après le commit : l'index ne désigne que des paiements enregistrés
+        payments.forEach(payment -> transactionIdIndex.put(payment.getTransactionId(), payment.getId()));
+    }
 
-        if (payment.getStatut() != PaymentStatus.REUSSI) {
-            throw new RuntimeException("Seuls les paiements réussis peuvent être remboursés. Statut actuel: " + payment.getStatut());
-        }
 
-        log.info("Remboursement du paiement " + paymentId + "de DIRHAM " + payment.getMontant());
+    // Réservation courte (REUSSI -> REMBOURSEMENT_EN_COURS), appel au fournisseur hors transaction, puis
+    // seconde transaction courte vers REMBOURSE ou retour à REUSSI : aucun verrou ni connexion pendant l'appel
+    public Payment refundPayment(Long paymentId) {
+        Payment payment = transactionTemplate.execute(status -> {
+            // Verrou sur la ligne le temps de la réservation : une tâche groupée ne peut pas la réserver aussi
+            Payment reserve = paymentRepository.findByIdForUpdate(paymentId)
+                    .orElseThrow(() -> new RuntimeException("Paiement non trouvé avec l'ID: " + paymentId));
+            if (reserve.getStatut() != PaymentStatus.REUSSI) {
+                throw new RuntimeException("Seuls les paiements réussis peuvent être remboursés. Statut actuel: " + reserve.getStatut());
+            }
+            reserve.setStatut(PaymentStatus.REMBOURSEMENT_EN_COURS);
+            eventPublisher.publish(reserve);
+            return reserve;
+        });
 
-        boolean refundSuccess = false;
+        log.info("Remboursement du paiement " + paymentId + " de DIRHAM " + payment.getMontant());
 
+        boolean refundSuccess;
+        String erreur = "Échec du remboursement auprès du fournisseur de paiement";
         try {
-            switch (payment.getMethodePaiement()) {
-                case CARTE_CREDIT:
-
+            refundSuccess = switch (payment.getMethodePaiement()) {
+                case CARTE_CREDIT, PAYPAL -> providerGateway.refund(payment.getTransactionId(), payment.getMontant());
+                case VIREMENT_BANCAIRE, ESPECES -> {
+                    log.info("Remboursement manuel approuvé");
+                    yield true;
+                }
+            };
+        } catch (ProviderTimeoutException e) {
+            // Le fournisseur a pu rembourser : la réservation reste, à résoudre par POST /payments/{id}/refund/resolve
+            log.error("Remboursement du paiement " + paymentId + " à rapprocher: " + e.getMessage());
+            throw new RuntimeException("Remboursement sans réponse du fournisseur, paiement " + paymentId
+                    + " à rapprocher: " + e.getMessage());
+        } catch (RuntimeException e) {
+            log.error(" Erreur lors du remboursement: {}", e.getMessage());
+            refundSuccess = false;
+            erreur = "Erreur lors du remboursement: " + e.getMessage();
+        }
 
-                case PAYPAL:
-                    refundSuccess = payPalService.refund(payment.getTransactionId(), payment.getMontant());
-                    break;
+        Payment resultat = terminerRemboursement(paymentId, refundSuccess);
+        if (!refundSuccess) {
+            throw new RuntimeException(erreur);
+        }
+        log.info("Paiement " + paymentId + " remboursé avec succès");
+        return resultat;
+    }
 
-                case VIREMENT_BANCAIRE:
-                case ESPECES:
+    // Remboursement resté en REMBOURSEMENT_EN_COURS (délai dépassé, tâche groupée interrompue) : l'opérateur
+    // indique, après vérification chez le fournisseur, s'il a eu lieu
+    public Payment resolveRefund(Long paymentId, boolean rembourse) {
+        log.warn("Résolution manuelle du remboursement du paiement " + paymentId + ": "
+                + (rembourse ? "remboursé" : "non remboursé"));
+        return terminerRemboursement(paymentId, rembourse);
+    }
 
-                    refundSuccess = true;
-                    log.info("Remboursement manuel approuvé");
-                    break;
+    private Payment terminerRemboursement(Long paymentId, boolean rembourse) {
+        return transactionTemplate.execute(status -> {
+            Payment payment = paymentRepository.findByIdForUpdate(paymentId)
+                    .orElseThrow(() -> new RuntimeException("Paiement non trouvé avec l'ID: " + paymentId));
+            if (payment.getStatut() != PaymentStatus.REMBOURSEMENT_EN_COURS) {
+                throw new RuntimeException("Aucun remboursement en cours pour ce paiement. Statut actuel: " + payment.getStatut());
             }
-
-            if (refundSuccess) {
+            if (rembourse) {
                 payment.setStatut(PaymentStatus.REMBOURSE);
-                log.info("Paiement" + paymentId + "remboursé avec succès");
+                revenueService.paiementRembourse(payment);
             } else {
-                throw new RuntimeException("Échec du remboursement auprès du fournisseur de paiement");
+                payment.setStatut(PaymentStatus.REUSSI);
             }
-
-        } catch (Exception e) {
-            log.error(" Erreur lors du remboursement: {}", e.getMessage());
-            throw new RuntimeException("Erreur lors du remboursement: " + e.getMessage());
-        }
-
-        return paymentRepository.save(payment);
+            eventPublisher.publish(payment);
+            return payment;
+        });
     }
 
 
@@ -216,6 +531,8 @@ public class PaymentService {
 
         payment.setStatut(PaymentStatus.REUSSI);
         payment.setPaidAt(LocalDateTime.now());
+        revenueService.paiementReussi(payment);
+        eventPublisher.publish(payment);
 
         log.info("✅ Paiement manuel" + paymentId + " confirmé");
         return paymentRepository.save(payment);
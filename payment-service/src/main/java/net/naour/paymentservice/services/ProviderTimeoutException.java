@@ -0,0 +1,11 @@
+package net.naour.paymentservice.services;
+
+/**
+ * Appel au fournisseur de paiement sans réponse dans le délai : contrairement à un refus,
+ * l'opération a pu aboutir chez le fournisseur et son résultat reste à rapprocher.
+ */
+public class ProviderTimeoutException extends ProviderUnavailableException {
+    public ProviderTimeoutException(String message) {
+        super(message);
+    }
+}
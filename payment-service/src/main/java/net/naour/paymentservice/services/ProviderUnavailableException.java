@@ -0,0 +1,11 @@
+package net.naour.paymentservice.services;
+
+/**
+ * Appel au fournisseur de paiement refusé ou abandonné sans réponse :
+ * circuit ouvert, trop d'appels simultanés ou délai dépassé.
+ */
+public class ProviderUnavailableException extends RuntimeException {
+    public ProviderUnavailableException(String message) {
+        super(message);
+    }
+}
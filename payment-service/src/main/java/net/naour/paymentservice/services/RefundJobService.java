@@ -0,0 +1,279 @@
+package net.naour.paymentservice.services;
+
+import lombok.extern.slf4j.Slf4j;
+import net.naour.paymentservice.DTO.BulkRefundRequest;
+import net.naour.paymentservice.DTO.RefundJob;
+import net.naour.paymentservice.DTO.RefundResult;
+import net.naour.paymentservice.entities.Payment;
+import net.naour.paymentservice.entities.PaymentStatus;
+import net.naour.paymentservice.repositories.PaymentRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Remboursements groupés (annulation d'un lot de réservations) exécutés en tâche de fond :
+ * les paiements réussis sont réservés (REMBOURSEMENT_EN_COURS) en une transaction avant tout appel
+ * au fournisseur, appels en parallèle borné (CaptureExecutor), puis une seule transaction pour tous
+ * les passages à REMBOURSE ; les paiements dont le remboursement a échoué redeviennent REUSSI.
+ */
+@Service
+@Slf4j
+public class RefundJobService {
+    private static final int MAX_PAYMENTS_PER_JOB = 1000;
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentProviderGateway providerGateway;
+    private final RevenueService revenueService;
+    private final PaymentEventPublisher eventPublisher;
+    private final CaptureExecutor captureExecutor;
+    private final TaskExecutor taskExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, JobState> jobs;
+
+    public RefundJobService(PaymentRepository paymentRepository,
+                            PaymentProviderGateway providerGateway,
+                            RevenueService revenueService,
+                            PaymentEventPublisher eventPublisher,
+                            CaptureExecutor captureExecutor,
+                            TaskExecutor taskExecutor,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${payment.refund.jobs-retained:100}") int jobsRetained) {
+        this.paymentRepository = paymentRepository;
+        this.providerGateway = providerGateway;
+        this.revenueService = revenueService;
+        this.eventPublisher = eventPublisher;
+        this.captureExecutor = captureExecutor;
+        this.taskExecutor = taskExecutor;
+        this.transactionTemplate = transactionTemplate;
+        // Seules les dernières tâches restent consultables
+        this.jobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JobState> eldest) {
+                return size() > jobsRetained;
+            }
+        });
+    }
+
+    public RefundJob submit(BulkRefundRequest request) {
+        List<Long> paymentIds = request.getPaymentIds() != null ? request.getPaymentIds() : List.of();
+        List<Long> rentalIds = request.getRentalIds() != null ? request.getRentalIds() : List.of();
+        if (paymentIds.isEmpty() && rentalIds.isEmpty()) {
+            throw new RuntimeException("Aucun paiement ni réservation à rembourser");
+        }
+
+        // Validation et réservation en une seule transaction : les lignes sont verrouillées, un
+        // remboursement concurrent (unitaire ou groupé) ne peut pas réserver les mêmes paiements
+        List<RefundResult> rejetes = new ArrayList<>();
+        Set<Long> trouves = new HashSet<>();
+        List<Payment> eligibles = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Payment> payments = paymentRepository.findByIdInOrRentalIdIn(paymentIds, rentalIds);
+            if (payments.size() > MAX_PAYMENTS_PER_JOB) {
+                throw new RuntimeException("Une tâche ne peut pas rembourser plus de " + MAX_PAYMENTS_PER_JOB + " paiements");
+            }
+            for (Payment payment : payments) {
+                trouves.add(payment.getId());
+                if (payment.getStatut() == PaymentStatus.REUSSI) {
+                    payment.setStatut(PaymentStatus.REMBOURSEMENT_EN_COURS);
+                    eligibles.add(payment);
+                } else {
+                    rejetes.add(resultat(payment, "Seuls les paiements réussis peuvent être remboursés. Statut actuel: "
+                            + payment.getStatut()));
+                }
+            }
+            eligibles.forEach(eventPublisher::publish);
+        });
+
+        for (Long id : new LinkedHashSet<>(paymentIds)) {
+            if (!trouves.contains(id)) {
+                rejetes.add(RefundResult.builder()
+                        .paymentId(id)
+                        .message("Paiement non trouvé avec l'ID: " + id)
+                        .build());
+            }
+        }
+
+        JobState job = new JobState(UUID.randomUUID().toString(), eligibles.size(), rejetes);
+        jobs.put(job.id, job);
+        log.info("Tâche de remboursement " + job.id + " : " + eligibles.size() + " paiement(s), "
+                + rejetes.size() + " rejeté(s)");
+
+        if (eligibles.isEmpty()) {
+            job.terminer(RefundJob.Etat.TERMINE);
+        } else {
+            try {
+                taskExecutor.execute(() -> executer(job, eligibles));
+            } catch (RuntimeException e) {
+                // Aucun appel au fournisseur n'a eu lieu : la réservation peut être levée
+                liberer(eligibles);
+                jobs.remove(job.id);
+                throw e;
+            }
+        }
+        return job.snapshot();
+    }
+
+    public RefundJob getJob(String jobId) {
+        JobState job = jobs.get(jobId);
+        if (job == null) {
+            throw new RuntimeException("Tâche de remboursement non trouvée: " + jobId);
+        }
+        return job.snapshot();
+    }
+
+    private void executer(JobState job, List<Payment> eligibles) {
+        try {
+            List<Boolean> rembourses = captureExecutor.map(eligibles, payment -> {
+                Boolean success = rembourserChezFournisseur(payment, job);
+                job.traite();
+                return success;
+            });
+
+            Map<Long, Boolean> resultats = new HashMap<>();
+            for (int i = 0; i < eligibles.size(); i++) {
+                resultats.put(eligibles.get(i).getId(), rembourses.get(i));
+            }
+            enregistrerRemboursements(resultats, job);
+            job.terminer(RefundJob.Etat.TERMINE);
+        } catch (RuntimeException e) {
+            // Les paiements restent en REMBOURSEMENT_EN_COURS : certains ont pu être remboursés chez le
+            // fournisseur, les remettre à REUSSI permettrait un second remboursement
+            List<Long> ids = eligibles.stream().map(Payment::getId).toList();
+            log.error("Tâche de remboursement " + job.id + " interrompue: " + e.getMessage()
+                    + " ; paiements à résoudre (POST /payments/{id}/refund/resolve): " + ids);
+            eligibles.forEach(payment -> job.echec(resultat(payment,
+                    "Tâche interrompue, remboursement à résoudre: " + e.getMessage())));
+            job.terminer(RefundJob.Etat.ECHOUE);
+        }
+    }
+
+    private void liberer(List<Payment> reserves) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Payment payment : paymentRepository.findAllById(reserves.stream().map(Payment::getId).toList())) {
+                if (payment.getStatut() == PaymentStatus.REMBOURSEMENT_EN_COURS) {
+                    payment.setStatut(PaymentStatus.REUSSI);
+                    eventPublisher.publish(payment);
+                }
+            }
+        });
+    }
+
+    // Vrai si remboursé, faux si refusé, null sans réponse du fournisseur (le paiement reste réservé)
+    private Boolean rembourserChezFournisseur(Payment payment, JobState job) {
+        try {
+            boolean success = switch (payment.getMethodePaiement()) {
+                case CARTE_CREDIT, PAYPAL -> providerGateway.refund(payment.getTransactionId(), payment.getMontant());
+                case VIREMENT_BANCAIRE, ESPECES -> true;
+            };
+            if (!success) {
+                job.echec(resultat(payment, "Échec du remboursement auprès du fournisseur de paiement"));
+            }
+            return success;
+        } catch (ProviderTimeoutException e) {
+            job.echec(resultat(payment, "Remboursement sans réponse du fournisseur, à résoudre: " + e.getMessage()));
+            return null;
+        } catch (RuntimeException e) {
+            job.echec(resultat(payment, "Erreur lors du remboursement: " + e.getMessage()));
+            return false;
+        }
+    }
+
+    // Une seule transaction pour tous les résultats (mises à jour en batch JDBC) : REMBOURSE si le
+    // fournisseur a accepté, REUSSI s'il a refusé ; sans réponse, la réservation reste à résoudre
+    private void enregistrerRemboursements(Map<Long, Boolean> resultats, JobState job) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Payment> enregistres = new ArrayList<>();
+            List<Payment> liberes = new ArrayList<>();
+            for (Payment payment : paymentRepository.findAllById(resultats.keySet())) {
+                if (payment.getStatut() != PaymentStatus.REMBOURSEMENT_EN_COURS) {
+                    job.echec(resultat(payment, "Statut modifié pendant le remboursement: " + payment.getStatut()));
+                    continue;
+                }
+                Boolean rembourse = resultats.get(payment.getId());
+                if (rembourse == null) {
+                    continue;
+                }
+                if (rembourse) {
+                    payment.setStatut(PaymentStatus.REMBOURSE);
+                    enregistres.add(payment);
+                } else {
+                    payment.setStatut(PaymentStatus.REUSSI);
+                    liberes.add(payment);
+                }
+            }
+            paymentRepository.flush();
+
+            if (!enregistres.isEmpty()) {
+                revenueService.paiementsRembourses(enregistres);
+            }
+            enregistres.forEach(eventPublisher::publish);
+            liberes.forEach(eventPublisher::publish);
+            enregistres.forEach(payment -> job.rembourse(resultat(payment, "Paiement remboursé avec succès")));
+        });
+    }
+
+    private static RefundResult resultat(Payment payment, String message) {
+        return RefundResult.builder()
+                .paymentId(payment.getId())
+                .rentalId(payment.getRentalId())
+                .statut(payment.getStatut())
+                .message(message)
+                .build();
+    }
+
+    private static final class JobState {
+        private final String id;
+        private final int total;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final List<RefundResult> resultats;
+        private RefundJob.Etat etat = RefundJob.Etat.EN_COURS;
+        private int traites;
+        private int rembourses;
+        private int echecs;
+        private LocalDateTime finishedAt;
+
+        private JobState(String id, int total, List<RefundResult> rejetes) {
+            this.id = id;
+            this.total = total;
+            this.resultats = new ArrayList<>(rejetes);
+        }
+
+        synchronized void traite() {
+            traites++;
+        }
+
+        synchronized void rembourse(RefundResult resultat) {
+            rembourses++;
+            resultats.add(resultat);
+        }
+
+        synchronized void echec(RefundResult resultat) {
+            echecs++;
+            resultats.add(resultat);
+        }
+
+        synchronized void terminer(RefundJob.Etat etatFinal) {
+            etat = etatFinal;
+            finishedAt = LocalDateTime.now();
+        }
+
+        synchronized RefundJob snapshot() {
+            return RefundJob.builder()
+                    .jobId(id)
+                    .etat(etat)
+                    .total(total)
+                    .traites(traites)
+                    .rembourses(rembourses)
+                    .echecs(echecs)
+                    .resultats(List.copyOf(resultats))
+                    .createdAt(createdAt)
+                    .finishedAt(finishedAt)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package net.naour.paymentservice.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.naour.paymentservice.entities.MethodePaiement;
+import net.naour.paymentservice.entities.Payment;
+import net.naour.paymentservice.entities.RevenueRollup;
+import net.naour.paymentservice.repositories.PaymentRepository;
+import net.naour.paymentservice.repositories.RevenueRollupRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Compteurs de revenu maintenus à chaque changement de statut : total, par jour de paiement
+ * et par méthode. Persistés dans revenue_rollups et gardés en mémoire pour des lectures
+ * en temps constant ; rebuild() les recalcule depuis la table payments.
+ * Les compteurs persistés sont écrits après le commit du paiement par un écrivain unique : un compteur
+ * ne peut pas annuler un paiement déjà capturé, et la première ligne d'un couple (jour, méthode) est
+ * insérée sans concurrence, donc sans verrou applicatif. Un échec d'écriture est journalisé ;
+ * rebuild() remet alors les compteurs d'accord avec les paiements.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RevenueService {
+    private final RevenueRollupRepository rollupRepository;
+    private final PaymentRepository paymentRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile RevenueTotals totals = new RevenueTotals();
+    // Lecture : transaction en cours qui modifie les compteurs (jusqu'à sa fin) ; écriture : rebuild()
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    // Seul thread qui écrit dans revenue_rollups : incréments dans l'ordre des commits, puis rebuild()
+    private final ExecutorService ecrivain =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("revenue-rollups").factory());
+
+    // Charger les compteurs persistés au démarrage
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        RevenueTotals loaded = new RevenueTotals();
+        rollupRepository.findAll().forEach(rollup ->
+                loaded.add(rollup.getJour(), rollup.getMethodePaiement(), rollup.getMontant()));
+        totals = loaded;
+        log.info("Compteurs de revenu chargés: {} DIRHAM", loaded.total());
+    }
+
+    // À appeler dans la transaction qui passe le paiement à REUSSI
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void paiementReussi(Payment payment) {
+        appliquer(payment, payment.getMontant(), 1);
+    }
+
+    // Variante pour un lot : un seul incrément par couple (jour, méthode)
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void paiementsReussis(Collection<Payment> payments) {
+        appliquerLot(payments, 1);
+    }
+
+    // À appeler dans la transaction qui passe un paiement REUSSI à REMBOURSE
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void paiementRembourse(Payment payment) {
+        appliquer(payment, -payment.getMontant(), -1);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void paiementsRembourses(Collection<Payment> payments) {
+        appliquerLot(payments, -1);
+    }
+
+    public double getTotalRevenue() {
+        return arrondir(totals.total());
+    }
+
+    // Revenu par jour de paiement sur la période (jours sans paiement omis)
+    public SortedMap<LocalDate, Double> getDailyRevenue(LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new RuntimeException("La date de début doit précéder la date de fin");
+        }
+        SortedMap<LocalDate, Double> revenue = new TreeMap<>();
+        totals.parJour.subMap(startDate, true, endDate, true)
+                .forEach((jour, montant) -> revenue.put(jour, arrondir(montant.sum())));
+        return revenue;
+    }
+
+    public Map<MethodePaiement, Double> getRevenueByMethode() {
+        Map<MethodePaiement, Double> revenue = new EnumMap<>(MethodePaiement.class);
+        totals.parMethode.forEach((methode, montant) -> revenue.put(methode, arrondir(montant.sum())));
+        return revenue;
+    }
+
+    // Recalcule entièrement les compteurs (table et mémoire) depuis les paiements réussis.
+    // Attend la fin des transactions qui modifient les compteurs et bloque les suivantes jusqu'au remplacement ;
+    // exécuté par l'écrivain après les incréments déjà validés : aucun n'est perdu ni compté deux fois.
+    public double rebuild() {
+        verrou.writeLock().lock();
+        try {
+            return ecrivain.submit(this::reconstruire).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Reconstruction des compteurs de revenu interrompue");
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    // Attend que les incréments déjà validés soient écrits dans revenue_rollups
+    void attendreEcritures() throws ExecutionException, InterruptedException {
+        ecrivain.submit(() -> { }).get();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        ecrivain.shutdown();
+        if (!ecrivain.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("Compteurs de revenu non écrits à l'arrêt : POST /payments/revenue/rebuild au redémarrage");
+        }
+    }
+
+    private double reconstruire() {
+        RevenueTotals rebuilt = transactionTemplate.execute(status -> {
+            Map<RollupKey, RevenueRollup> rollups = new HashMap<>();
+            try (Stream<Object[]> rows = paymentRepository.streamSuccessfulPaymentAmounts()) {
+                rows.forEach(row -> {
+                    LocalDate jour = jourDePaiement((LocalDateTime) row[0], (LocalDateTime) row[1]);
+                    MethodePaiement methode = (MethodePaiement) row[2];
+                    RevenueRollup rollup = rollups.computeIfAbsent(new RollupKey(jour, methode), key ->
+                            RevenueRollup.builder().jour(jour).methodePaiement(methode).build());
+                    rollup.setMontant(rollup.getMontant() + (Double) row[3]);
+                    rollup.setNombrePaiements(rollup.getNombrePaiements() + 1);
+                });
+            }
+
+            rollupRepository.deleteAllInBatch();
+            rollupRepository.saveAll(rollups.values());
+
+            RevenueTotals recalculated = new RevenueTotals();
+            rollups.values().forEach(rollup ->
+                    recalculated.add(rollup.getJour(), rollup.getMethodePaiement(), rollup.getMontant()));
+            return recalculated;
+        });
+        totals = rebuilt;
+        log.info("Compteurs de revenu reconstruits: {} DIRHAM", rebuilt.total());
+        return arrondir(rebuilt.total());
+    }
+
+    private void appliquerLot(Collection<Payment> payments, int signe) {
+        Map<RollupKey, RevenueRollup> deltas = new HashMap<>();
+        for (Payment payment : payments) {
+            RollupKey key = new RollupKey(jourDePaiement(payment.getPaidAt(), payment.getCreatedAt()),
+                    payment.getMethodePaiement());
+            RevenueRollup delta = deltas.computeIfAbsent(key, k ->
+                    RevenueRollup.builder().jour(k.jour()).methodePaiement(k.methode()).build());
+            delta.setMontant(delta.getMontant() + signe * payment.getMontant());
+            delta.setNombrePaiements(delta.getNombrePaiements() + signe);
+        }
+        appliquer(deltas.values());
+    }
+
+    private void appliquer(Payment payment, double montant, long nombre) {
+        appliquer(List.of(RevenueRollup.builder()
+                .jour(jourDePaiement(payment.getPaidAt(), payment.getCreatedAt()))
+                .methodePaiement(payment.getMethodePaiement())
+                .montant(montant)
+                .nombrePaiements(nombre)
+                .build()));
+    }
+
+    private void appliquer(Collection<RevenueRollup> deltas) {
+        // Verrou gardé jusqu'à la fin de la transaction : les incréments sont confiés à l'écrivain avant qu'un
+        // rebuild() puisse relire les paiements
+        verrou.readLock().lock();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // La mémoire ne reflète que des changements validés en base
+                deltas.forEach(delta -> totals.add(delta.getJour(), delta.getMethodePaiement(), delta.getMontant()));
+                try {
+                    ecrivain.execute(() -> enregistrer(deltas));
+                } catch (RejectedExecutionException e) {
+                    log.error("Compteurs de revenu non écrits (arrêt en cours) : POST /payments/revenue/rebuild");
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                verrou.readLock().unlock();
+            }
+        });
+    }
+
+    // Sur l'écrivain, dans sa propre transaction : un échec ne touche pas le paiement déjà validé
+    private void enregistrer(Collection<RevenueRollup> deltas) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (RevenueRollup delta : deltas) {
+                    // Écrivain unique : personne d'autre ne peut insérer la ligne entre l'incrément et l'insertion
+                    if (rollupRepository.increment(delta.getJour(), delta.getMethodePaiement(),
+                            delta.getMontant(), delta.getNombrePaiements()) == 0) {
+                        rollupRepository.save(delta);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Compteurs de revenu non enregistrés, POST /payments/revenue/rebuild pour les recalculer: {}",
+                    e.getMessage());
+        }
+    }
+
+    private static LocalDate jourDePaiement(LocalDateTime paidAt, LocalDateTime createdAt) {
+        if (paidAt != null) {
+            return paidAt.toLocalDate();
+        }
+        return createdAt != null ? createdAt.toLocalDate() : LocalDate.now();
+    }
+
+    private static double arrondir(double montant) {
+        return Math.round(montant * 100.0) / 100.0;
+    }
+
+    private record RollupKey(LocalDate jour, MethodePaiement methode) {
+    }
+
+    private static final class RevenueTotals {
+        private final DoubleAdder total = new DoubleAdder();
+        private final ConcurrentSkipListMap<LocalDate, DoubleAdder> parJour = new ConcurrentSkipListMap<>();
+        private final Map<MethodePaiement, DoubleAdder> parMethode = new ConcurrentHashMap<>();
+
+        void add(LocalDate jour, MethodePaiement methode, double montant) {
+            total.add(montant);
+            parJour.computeIfAbsent(jour, k -> new DoubleAdder()).add(montant);
+            parMethode.computeIfAbsent(methode, k -> new DoubleAdder()).add(montant);
+        }
+
+        double total() {
+            return total.sum();
+        }
+    }
+}
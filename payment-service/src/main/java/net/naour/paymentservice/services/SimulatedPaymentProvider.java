@@ -0,0 +1,144 @@
+package net.naour.paymentservice.services;
+
+import lombok.extern.slf4j.Slf4j;
+import net.naour.paymentservice.DTO.PaymentRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.random.RandomGenerator;
+
+/**
+ * Fournisseur simulé pour les tests de charge (payment.provider.type=simulator).
+ * Latence selon une loi FIXED, NORMAL ou LONG_TAIL (log-normale), taux de refus, taux d'appels
+ * qui ne répondent pas (bloqués hang-duration, coupés par le délai de PaymentProviderGateway)
+ * et débit maximal. Chaque appel tire ses valeurs d'un générateur dérivé de payment.provider.simulator.seed,
+ * du numéro de la commande et de l'opération : avec la même graine, la commande SIM-n a les mêmes latences
+ * et le même résultat d'une exécution à l'autre, quel que soit l'entrelacement des appels concurrents.
+ */
+@Service
+@ConditionalOnProperty(name = "payment.provider.type", havingValue = "simulator")
+@Slf4j
+public class SimulatedPaymentProvider implements PaymentProvider {
+    public enum LatencyDistribution { FIXED, NORMAL, LONG_TAIL }
+
+    private static final long CREATE = 1;
+    private static final long CAPTURE = 2;
+    private static final long REFUND = 3;
+
+    private final long seed;
+    private final LatencyDistribution distribution;
+    private final Duration latency;
+    private final Duration latencyStddev;
+    private final double tailSigma;
+    private final double failureRate;
+    private final double timeoutRate;
+    private final Duration hangDuration;
+    private final long intervalNanos;
+    private final AtomicLong orderSequence = new AtomicLong();
+    private long nextSlot;
+
+    public SimulatedPaymentProvider(@Value("${payment.provider.simulator.seed:42}") long seed,
+                                    @Value("${payment.provider.simulator.latency-distribution:FIXED}") LatencyDistribution distribution,
+                                    @Value("${payment.provider.simulator.latency:50ms}") Duration latency,
+                                    @Value("${payment.provider.simulator.latency-stddev:15ms}") Duration latencyStddev,
+                                    @Value("${payment.provider.simulator.tail-sigma:1.0}") double tailSigma,
+                                    @Value("${payment.provider.simulator.failure-rate:0.05}") double failureRate,
+                                    @Value("${payment.provider.simulator.timeout-rate:0}") double timeoutRate,
+                                    @Value("${payment.provider.simulator.hang-duration:30s}") Duration hangDuration,
+                                    @Value("${payment.provider.simulator.max-throughput:0}") int maxThroughput) {
+        this.seed = seed;
+        this.distribution = distribution;
+        this.latency = latency;
+        this.latencyStddev = latencyStddev;
+        this.tailSigma = tailSigma;
+        this.failureRate = failureRate;
+        this.timeoutRate = timeoutRate;
+        this.hangDuration = hangDuration;
+        this.intervalNanos = maxThroughput > 0 ? TimeUnit.SECONDS.toNanos(1) / maxThroughput : 0;
+        this.nextSlot = System.nanoTime();
+        log.info("SIMULATEUR: latence " + distribution + " " + latency.toMillis() + " ms, refus " + failureRate
+                + ", sans réponse " + timeoutRate + ", débit max " + maxThroughput + "/s, graine " + seed);
+    }
+
+    @Override
+    public String createOrder(PaymentRequest request) {
+        long numero = orderSequence.incrementAndGet();
+        simulerAppel(tirage(numero, CREATE));
+        return "SIM-" + numero;
+    }
+
+    @Override
+    public boolean capturePayment(String orderId) {
+        RandomGenerator tirage = tirage(numero(orderId), CAPTURE);
+        simulerAppel(tirage);
+        return tirage.nextDouble() >= failureRate;
+    }
+
+    @Override
+    public boolean refund(String orderId, double amount) {
+        RandomGenerator tirage = tirage(numero(orderId), REFUND);
+        simulerAppel(tirage);
+        return tirage.nextDouble() >= failureRate;
+    }
+
+    // Générateur propre à l'appel : aucun état partagé entre threads
+    private RandomGenerator tirage(long numero, long operation) {
+        return new SplittableRandom(seed ^ (numero * 0x9E3779B97F4A7C15L) ^ (operation << 56));
+    }
+
+    private static long numero(String orderId) {
+        try {
+            return Long.parseLong(orderId.substring(orderId.indexOf('-') + 1));
+        } catch (NumberFormatException e) {
+            return orderId.hashCode();
+        }
+    }
+
+    private void simulerAppel(RandomGenerator tirage) {
+        attendreCreneau();
+        if (timeoutRate > 0 && tirage.nextDouble() < timeoutRate) {
+            pause(hangDuration.toNanos());
+            throw new RuntimeException("SIMULATEUR: le fournisseur n'a pas répondu");
+        }
+        pause(tirerLatence(tirage));
+    }
+
+    private long tirerLatence(RandomGenerator tirage) {
+        double nanos = latency.toNanos();
+        return switch (distribution) {
+            case FIXED -> (long) nanos;
+            case NORMAL -> Math.max(0, (long) (nanos + tirage.nextGaussian() * latencyStddev.toNanos()));
+            // Médiane = latency, quelques appels beaucoup plus lents (queue longue)
+            case LONG_TAIL -> (long) (nanos * Math.exp(tailSigma * tirage.nextGaussian()));
+        };
+    }
+
+    // Débit maximal : chaque appel réserve le prochain créneau libre et attend son tour
+    private void attendreCreneau() {
+        if (intervalNanos == 0) {
+            return;
+        }
+        long slot;
+        synchronized (this) {
+            slot = Math.max(System.nanoTime(), nextSlot);
+            nextSlot = slot + intervalNanos;
+        }
+        pause(slot - System.nanoTime());
+    }
+
+    private static void pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        for (long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new RuntimeException("SIMULATEUR: appel interrompu");
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package net.naour.paymentservice.services;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Compteur sur fenêtre glissante, sans verrou : la fenêtre est découpée en seaux de durée fixe
+ * (anneau d'AtomicLong). Chaque seau range dans un seul long son numéro (20 bits de poids fort)
+ * et sa valeur (44 bits), ce qui permet de le réinitialiser et de l'incrémenter en un seul CAS.
+ */
+class SlidingWindowCounter {
+    private static final int VALUE_BITS = 44;
+    private static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+    private static final long EPOCH_MASK = (1L << (Long.SIZE - VALUE_BITS)) - 1;
+
+    private final AtomicLongArray buckets;
+    private final long bucketNanos;
+
+    SlidingWindowCounter(Duration window, int bucketCount) {
+        this.buckets = new AtomicLongArray(bucketCount);
+        this.bucketNanos = Math.max(1, window.toNanos() / bucketCount);
+    }
+
+    // Ajoute delta (>= 0) au seau courant et renvoie le total de la fenêtre
+    long add(long nowNanos, long delta) {
+        long bucket = Math.floorDiv(nowNanos, bucketNanos);
+        long epoch = bucket & EPOCH_MASK;
+        int slot = (int) Math.floorMod(bucket, buckets.length());
+        buckets.updateAndGet(slot, packed -> (packed >>> VALUE_BITS) == epoch
+                ? packed + delta
+                : (epoch << VALUE_BITS) | delta);
+        return sumAt(bucket);
+    }
+
+    // Annule un add fait avec le même instant, tant que son seau n'a pas été réutilisé
+    void undo(long nowNanos, long delta) {
+        long bucket = Math.floorDiv(nowNanos, bucketNanos);
+        long epoch = bucket & EPOCH_MASK;
+        int slot = (int) Math.floorMod(bucket, buckets.length());
+        buckets.updateAndGet(slot, packed -> (packed >>> VALUE_BITS) == epoch
+                ? packed - Math.min(delta, packed & VALUE_MASK)
+                : packed);
+    }
+
+    long sum(long nowNanos) {
+        return sumAt(Math.floorDiv(nowNanos, bucketNanos));
+    }
+
+    private long sumAt(long bucket) {
+        long epoch = bucket & EPOCH_MASK;
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            long packed = buckets.get(i);
+            long age = (epoch - (packed >>> VALUE_BITS)) & EPOCH_MASK;
+            if (age < buckets.length()) {
+                total += packed & VALUE_MASK;
+            }
+        }
+        return total;
+    }
+}
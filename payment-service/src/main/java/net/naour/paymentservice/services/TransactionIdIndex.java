@@ -0,0 +1,41 @@
+package net.naour.paymentservice.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Correspondance ID de transaction fournisseur -> ID de paiement pour les paiements récents
+ * (LRU borné par payment.transaction-index.size). Évite la requête sur transaction_id pour les
+ * recherches les plus fréquentes ; une absence renvoie simplement à l'index unique en base.
+ */
+@Component
+public class TransactionIdIndex {
+    private final Map<String, Long> paymentIds;
+
+    public TransactionIdIndex(@Value("${payment.transaction-index.size:10000}") int size) {
+        this.paymentIds = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > size;
+            }
+        });
+    }
+
+    public Long get(String transactionId) {
+        return paymentIds.get(transactionId);
+    }
+
+    public void put(String transactionId, Long paymentId) {
+        if (transactionId != null && paymentId != null) {
+            paymentIds.put(transactionId, paymentId);
+        }
+    }
+
+    public void remove(String transactionId) {
+        paymentIds.remove(transactionId);
+    }
+}
@@ -0,0 +1,119 @@
+package net.naour.paymentservice.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Contrôle de vélocité par client, en mémoire et sans verrou, appliqué avant tout appel au fournisseur :
+ * nombre de tentatives sur payment.velocity.attempts-window et montant cumulé sur payment.velocity.amount-window.
+ * Protège le quota du fournisseur contre les rafales (tests de cartes volées).
+ */
+@Component
+@Slf4j
+public class VelocityGuard {
+    private static final int BUCKETS = 10;
+
+    private final Map<Long, ClientCounters> clients = new ConcurrentHashMap<>();
+    private final int maxAttempts;
+    private final Duration attemptsWindow;
+    private final long maxAmountCentimes;
+    private final Duration amountWindow;
+    private final long idleNanos;
+    private final Counter rejectedAttempts;
+    private final Counter rejectedAmount;
+
+    public VelocityGuard(MeterRegistry meterRegistry,
+                         @Value("${payment.velocity.max-attempts:10}") int maxAttempts,
+                         @Value("${payment.velocity.attempts-window:1m}") Duration attemptsWindow,
+                         @Value("${payment.velocity.max-amount:50000}") double maxAmount,
+                         @Value("${payment.velocity.amount-window:1h}") Duration amountWindow) {
+        this.maxAttempts = maxAttempts;
+        this.attemptsWindow = attemptsWindow;
+        this.maxAmountCentimes = Math.round(maxAmount * 100);
+        this.amountWindow = amountWindow;
+        this.idleNanos = Math.max(attemptsWindow.toNanos(), amountWindow.toNanos());
+
+        this.rejectedAttempts = Counter.builder("payment.velocity.rejected").tag("reason", "attempts")
+                .register(meterRegistry);
+        this.rejectedAmount = Counter.builder("payment.velocity.rejected").tag("reason", "amount")
+                .register(meterRegistry);
+        Gauge.builder("payment.velocity.clients", clients, Map::size)
+                .description("Clients suivis par le contrôle de vélocité")
+                .register(meterRegistry);
+    }
+
+    // null si le paiement peut continuer, sinon le motif du refus
+    public String check(Long clientId, double montant) {
+        if (clientId == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        ClientCounters counters = clients.computeIfAbsent(clientId, id -> new ClientCounters());
+        counters.lastSeen = now;
+
+        // Les tentatives refusées comptent aussi : une rafale reste bloquée tant qu'elle dure
+        if (counters.attempts.add(now, 1) > maxAttempts) {
+            rejectedAttempts.increment();
+            return "Trop de tentatives de paiement (" + maxAttempts + " par "
+                    + attemptsWindow.toSeconds() + " s). Veuillez réessayer plus tard.";
+        }
+
+        long centimes = Math.round(montant * 100);
+        if (centimes > 0 && counters.amounts.add(now, centimes) > maxAmountCentimes) {
+            // Montant non retenu : seuls les paiements acceptés consomment le plafond
+            counters.amounts.undo(now, centimes);
+            rejectedAmount.increment();
+            return "Montant cumulé autorisé dépassé (" + maxAmountCentimes / 100.0 + " DIRHAM par "
+                    + amountWindow.toMinutes() + " min)";
+        }
+        return null;
+    }
+
+    // État courant d'un client, exposé par l'endpoint actuator velocity
+    public Map<String, Object> snapshot(Long clientId) {
+        Map<String, Object> state = new LinkedHashMap<>();
+        ClientCounters counters = clients.get(clientId);
+        long now = System.nanoTime();
+        state.put("clientId", clientId);
+        state.put("tentatives", counters != null ? counters.attempts.sum(now) : 0);
+        state.put("maxTentatives", maxAttempts);
+        state.put("montant", counters != null ? counters.amounts.sum(now) / 100.0 : 0.0);
+        state.put("montantMax", maxAmountCentimes / 100.0);
+        return state;
+    }
+
+    public Map<String, Object> summary() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("clientsSuivis", clients.size());
+        state.put("maxTentatives", maxAttempts);
+        state.put("fenetreTentatives", attemptsWindow.toString());
+        state.put("montantMax", maxAmountCentimes / 100.0);
+        state.put("fenetreMontant", amountWindow.toString());
+        state.put("refusTentatives", (long) rejectedAttempts.count());
+        state.put("refusMontant", (long) rejectedAmount.count());
+        return state;
+    }
+
+    // Oublie les clients sans activité depuis plus longtemps que la plus grande fenêtre
+    @Scheduled(fixedDelayString = "${payment.velocity.cleanup-interval:60000}")
+    public void evictIdleClients() {
+        long now = System.nanoTime();
+        clients.values().removeIf(counters -> now - counters.lastSeen > idleNanos);
+    }
+
+    private final class ClientCounters {
+        private final SlidingWindowCounter attempts = new SlidingWindowCounter(attemptsWindow, BUCKETS);
+        private final SlidingWindowCounter amounts = new SlidingWindowCounter(amountWindow, BUCKETS);
+        private volatile long lastSeen;
+    }
+}
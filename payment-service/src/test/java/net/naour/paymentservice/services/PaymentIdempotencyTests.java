@@ -0,0 +1,148 @@
+package net.naour.paymentservice.services;
+
+import net.naour.paymentservice.DTO.PaymentRequest;
+import net.naour.paymentservice.DTO.PaymentResponse;
+import net.naour.paymentservice.entities.IdempotencyRecord;
+import net.naour.paymentservice.entities.MethodePaiement;
+import net.naour.paymentservice.entities.Payment;
+import net.naour.paymentservice.entities.PaymentStatus;
+import net.naour.paymentservice.repositories.IdempotencyRecordRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = {"eureka.client.enabled=false", "spring.jpa.show-sql=false",
+        "payment.velocity.max-attempts=3"})
+class PaymentIdempotencyTests {
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private IdempotencyRecordRepository recordRepository;
+
+    @MockitoBean
+    private PaymentProviderGateway providerGateway;
+
+    @MockitoSpyBean
+    private TransactionIdIndex transactionIdIndex;
+
+    @Test
+    void replayedKeyReturnsStoredResponseWhileCircuitIsOpen() {
+        when(providerGateway.isAvailable()).thenReturn(true);
+        when(providerGateway.createOrder(any())).thenReturn("ORDER-IDEMPOTENCE-1");
+        when(providerGateway.capturePayment("ORDER-IDEMPOTENCE-1")).thenReturn(true);
+        PaymentRequest request = request(501L, 51L);
+
+        PaymentResponse premier = paymentService.processPayment(request, "cle-circuit-1");
+        assertThat(premier.getStatut()).isEqualTo(PaymentStatus.REUSSI);
+
+        // Disjoncteur ouvert : la clé déjà vue renvoie la réponse mémorisée, sans appel au fournisseur
+        when(providerGateway.isAvailable()).thenReturn(false);
+        PaymentResponse rejoue = paymentService.processPayment(request, "cle-circuit-1");
+        assertThat(rejoue.getStatut()).isEqualTo(PaymentStatus.REUSSI);
+        assertThat(rejoue.getPaymentId()).isEqualTo(premier.getPaymentId());
+        assertThat(rejoue.getTransactionId()).isEqualTo("ORDER-IDEMPOTENCE-1");
+        verify(providerGateway, times(1)).capturePayment(anyString());
+
+        // Une clé nouvelle est refusée immédiatement, sans être mémorisée
+        PaymentResponse nouvelle = paymentService.processPayment(request(502L, 51L), "cle-circuit-2");
+        assertThat(nouvelle.getStatut()).isEqualTo(PaymentStatus.ECHOUE);
+        assertThat(nouvelle.getPaymentId()).isNull();
+
+        when(providerGateway.isAvailable()).thenReturn(true);
+        when(providerGateway.createOrder(any())).thenReturn("ORDER-IDEMPOTENCE-2");
+        when(providerGateway.capturePayment("ORDER-IDEMPOTENCE-2")).thenReturn(true);
+        PaymentResponse reessai = paymentService.processPayment(request(502L, 51L), "cle-circuit-2");
+        assertThat(reessai.getStatut()).isEqualTo(PaymentStatus.REUSSI);
+    }
+
+    @Test
+    void replaysAndInvalidRequestsDoNotConsumeVelocityQuota() {
+        when(providerGateway.isAvailable()).thenReturn(true);
+        when(providerGateway.createOrder(any())).thenAnswer(invocation -> "ORDER-" + UUID.randomUUID());
+        when(providerGateway.capturePayment(anyString())).thenReturn(true);
+
+        PaymentResponse premier = paymentService.processPayment(request(601L, 61L), "cle-velocite-1");
+        for (int i = 0; i < 5; i++) {
+            assertThat(paymentService.processPayment(request(601L, 61L), "cle-velocite-1").getPaymentId())
+                    .isEqualTo(premier.getPaymentId());
+        }
+        PaymentRequest invalide = request(602L, 61L);
+        invalide.setMontant(-1);
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> paymentService.processPayment(invalide, null))
+                    .hasMessage("Le montant doit être positif");
+        }
+
+        // Quota de 3 : seules les requêtes nouvelles et valides comptent
+        assertThat(paymentService.processPayment(request(603L, 61L), "cle-velocite-2").getStatut())
+                .isEqualTo(PaymentStatus.REUSSI);
+        assertThat(paymentService.processPayment(request(604L, 61L), "cle-velocite-3").getStatut())
+                .isEqualTo(PaymentStatus.REUSSI);
+        PaymentResponse refuse = paymentService.processPayment(request(605L, 61L), "cle-velocite-4");
+        assertThat(refuse.getStatut()).isEqualTo(PaymentStatus.ECHOUE);
+        assertThat(refuse.getMessage()).startsWith("Trop de tentatives");
+    }
+
+    @Test
+    void failureAfterCaptureKeepsKeyAttachedToPayment() {
+        when(providerGateway.isAvailable()).thenReturn(true);
+        when(providerGateway.createOrder(any())).thenReturn("ORDER-APRES-CAPTURE");
+        when(providerGateway.capturePayment("ORDER-APRES-CAPTURE")).thenReturn(true);
+        doThrow(new RuntimeException("Panne après la capture"))
+                .when(transactionIdIndex).put(eq("ORDER-APRES-CAPTURE"), anyLong());
+        PaymentRequest request = request(701L, 71L);
+
+        assertThatThrownBy(() -> paymentService.processPayment(request, "cle-apres-capture"))
+                .hasMessage("Panne après la capture");
+
+        // La reprise renvoie le paiement déjà capturé, sans second débit
+        PaymentResponse reprise = paymentService.processPayment(request, "cle-apres-capture");
+        assertThat(reprise.getPaymentId()).isNotNull();
+        assertThat(paymentService.getPaymentById(reprise.getPaymentId())).get()
+                .extracting(Payment::getStatut).isEqualTo(PaymentStatus.REUSSI);
+        verify(providerGateway, times(1)).capturePayment("ORDER-APRES-CAPTURE");
+    }
+
+    @Test
+    void abandonedReservationWithoutPaymentExpires() {
+        when(providerGateway.isAvailable()).thenReturn(true);
+        when(providerGateway.createOrder(any())).thenReturn("ORDER-REPRISE");
+        when(providerGateway.capturePayment("ORDER-REPRISE")).thenReturn(true);
+        PaymentRequest request = request(801L, 81L);
+        recordRepository.save(IdempotencyRecord.builder()
+                .idempotencyKey("cle-abandonnee")
+                .requestHash(IdempotencyService.empreinte(request))
+                .statut(PaymentStatus.EN_COURS)
+                .message("Paiement en cours de traitement")
+                .createdAt(LocalDateTime.now().minusHours(1))
+                .build());
+
+        PaymentResponse response = paymentService.processPayment(request, "cle-abandonnee");
+        assertThat(response.getStatut()).isEqualTo(PaymentStatus.REUSSI);
+        assertThat(response.getPaymentId()).isNotNull();
+    }
+
+    private static PaymentRequest request(Long rentalId, Long clientId) {
+        return PaymentRequest.builder()
+                .rentalId(rentalId)
+                .clientId(clientId)
+                .montant(120.0)
+                .methodePaiement(MethodePaiement.CARTE_CREDIT)
+                .build();
+    }
+}
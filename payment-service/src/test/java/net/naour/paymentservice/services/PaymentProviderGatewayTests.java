@@ -0,0 +1,80 @@
+package net.naour.paymentservice.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.naour.paymentservice.DTO.PaymentRequest;
+import net.naour.paymentservice.DTO.PaymentResponse;
+import net.naour.paymentservice.entities.MethodePaiement;
+import net.naour.paymentservice.entities.Payment;
+import net.naour.paymentservice.entities.PaymentStatus;
+import net.naour.paymentservice.repositories.PaymentRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {"eureka.client.enabled=false", "spring.jpa.show-sql=false",
+        "payment.provider.timeout=200ms", "payment.provider.max-concurrent-calls=1"})
+class PaymentProviderGatewayTests {
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockitoBean
+    private PaymentProvider provider;
+
+    @Test
+    void captureTimeoutLeavesPaymentToReconcile() throws Exception {
+        CountDownLatch liberation = new CountDownLatch(1);
+        CountDownLatch fin = new CountDownLatch(1);
+        when(provider.createOrder(any())).thenReturn("ORDER-SANS-REPONSE");
+        when(provider.capturePayment("ORDER-SANS-REPONSE")).thenAnswer(invocation -> {
+            try {
+                liberation.await(10, TimeUnit.SECONDS);
+                return true;
+            } finally {
+                fin.countDown();
+            }
+        });
+
+        PaymentResponse response = paymentService.processPayment(PaymentRequest.builder()
+                .rentalId(901L)
+                .clientId(91L)
+                .montant(60.0)
+                .methodePaiement(MethodePaiement.CARTE_CREDIT)
+                .build());
+
+        // Le fournisseur a pu capturer : ni ECHOUE ni nouvelle tentative, la commande est gardée
+        assertThat(response.getStatut()).isEqualTo(PaymentStatus.EN_COURS);
+        assertThat(response.getMessage()).contains("ORDER-SANS-REPONSE");
+        Payment payment = paymentRepository.findById(response.getPaymentId()).orElseThrow();
+        assertThat(payment.getStatut()).isEqualTo(PaymentStatus.EN_COURS);
+        assertThat(payment.getTransactionId()).isEqualTo("ORDER-SANS-REPONSE");
+
+        // L'appel abandonné garde son permis jusqu'à ce qu'il se termine
+        assertThat(permisDisponibles()).isZero();
+        liberation.countDown();
+        assertThat(fin.await(10, TimeUnit.SECONDS)).isTrue();
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (permisDisponibles() == 0 && System.nanoTime() < limite) {
+            Thread.sleep(20);
+        }
+        assertThat(permisDisponibles()).isEqualTo(1);
+    }
+
+    private double permisDisponibles() {
+        return meterRegistry.get("payment.provider.bulkhead.available").gauge().value();
+    }
+}
@@ -0,0 +1,129 @@
+package net.naour.paymentservice.services;
+
+import net.naour.paymentservice.DTO.BulkRefundRequest;
+import net.naour.paymentservice.DTO.RefundJob;
+import net.naour.paymentservice.entities.MethodePaiement;
+import net.naour.paymentservice.entities.Payment;
+import net.naour.paymentservice.entities.PaymentStatus;
+import net.naour.paymentservice.repositories.PaymentRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = {"eureka.client.enabled=false", "spring.jpa.show-sql=false",
+        "payment.velocity.max-attempts=3"})
+class RefundJobServiceTests {
+
+    @Autowired
+    private RefundJobService refundJobService;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @MockitoBean
+    private PaymentProviderGateway providerGateway;
+
+    @Test
+    void claimedPaymentCannotBeRefundedTwice() throws Exception {
+        Payment payment = paymentReussi(701L, "TX-REMBOURSEMENT-1");
+        CountDownLatch appel = new CountDownLatch(1);
+        CountDownLatch liberation = new CountDownLatch(1);
+        when(providerGateway.refund("TX-REMBOURSEMENT-1", 80.0)).thenAnswer(invocation -> {
+            appel.countDown();
+            liberation.await(10, TimeUnit.SECONDS);
+            return true;
+        });
+
+        RefundJob job = refundJobService.submit(BulkRefundRequest.builder().paymentIds(List.of(payment.getId())).build());
+        assertThat(job.getTotal()).isEqualTo(1);
+        assertThat(appel.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(statut(payment)).isEqualTo(PaymentStatus.REMBOURSEMENT_EN_COURS);
+
+        // Pendant l'appel au fournisseur, ni un remboursement unitaire ni une seconde tâche ne passent
+        assertThatThrownBy(() -> paymentService.refundPayment(payment.getId()))
+                .hasMessageContaining("Statut actuel: REMBOURSEMENT_EN_COURS");
+        RefundJob second = refundJobService.submit(BulkRefundRequest.builder().rentalIds(List.of(701L)).build());
+        assertThat(second.getTotal()).isZero();
+        assertThat(second.getResultats()).singleElement()
+                .satisfies(resultat -> assertThat(resultat.getMessage()).contains("REMBOURSEMENT_EN_COURS"));
+
+        liberation.countDown();
+        RefundJob termine = attendreFin(job.getJobId());
+        assertThat(termine.getEtat()).isEqualTo(RefundJob.Etat.TERMINE);
+        assertThat(termine.getRembourses()).isEqualTo(1);
+        assertThat(statut(payment)).isEqualTo(PaymentStatus.REMBOURSE);
+        verify(providerGateway, times(1)).refund(anyString(), anyDouble());
+    }
+
+    @Test
+    void refusedRefundReleasesTheClaim() throws Exception {
+        Payment payment = paymentReussi(702L, "TX-REMBOURSEMENT-2");
+        when(providerGateway.refund("TX-REMBOURSEMENT-2", 80.0)).thenReturn(false);
+
+        RefundJob job = refundJobService.submit(BulkRefundRequest.builder().paymentIds(List.of(payment.getId())).build());
+        RefundJob termine = attendreFin(job.getJobId());
+
+        assertThat(termine.getEchecs()).isEqualTo(1);
+        assertThat(statut(payment)).isEqualTo(PaymentStatus.REUSSI);
+    }
+
+    @Test
+    void unansweredRefundStaysClaimedUntilResolved() {
+        Payment payment = paymentReussi(703L, "TX-REMBOURSEMENT-3");
+        when(providerGateway.refund("TX-REMBOURSEMENT-3", 80.0))
+                .thenThrow(new ProviderTimeoutException("Délai dépassé pour le fournisseur de paiement"));
+
+        // Le fournisseur a pu rembourser : ni retour à REUSSI ni second remboursement possible
+        assertThatThrownBy(() -> paymentService.refundPayment(payment.getId()))
+                .hasMessageContaining("à rapprocher");
+        assertThat(statut(payment)).isEqualTo(PaymentStatus.REMBOURSEMENT_EN_COURS);
+        assertThatThrownBy(() -> paymentService.refundPayment(payment.getId()))
+                .hasMessageContaining("Statut actuel: REMBOURSEMENT_EN_COURS");
+
+        assertThat(paymentService.resolveRefund(payment.getId(), true).getStatut()).isEqualTo(PaymentStatus.REMBOURSE);
+        assertThat(statut(payment)).isEqualTo(PaymentStatus.REMBOURSE);
+        verify(providerGateway, times(1)).refund(anyString(), anyDouble());
+    }
+
+    private Payment paymentReussi(Long rentalId, String transactionId) {
+        Payment payment = new Payment();
+        payment.setRentalId(rentalId);
+        payment.setClientId(71L);
+        payment.setMontant(80.0);
+        payment.setMethodePaiement(MethodePaiement.CARTE_CREDIT);
+        payment.setStatut(PaymentStatus.REUSSI);
+        payment.setTransactionId(transactionId);
+        payment.setCreatedAt(LocalDateTime.now());
+        payment.setPaidAt(LocalDateTime.now());
+        return paymentRepository.save(payment);
+    }
+
+    private PaymentStatus statut(Payment payment) {
+        return paymentRepository.findById(payment.getId()).orElseThrow().getStatut();
+    }
+
+    private RefundJob attendreFin(String jobId) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        RefundJob job = refundJobService.getJob(jobId);
+        while (job.getEtat() == RefundJob.Etat.EN_COURS && System.nanoTime() < limite) {
+            Thread.sleep(20);
+            job = refundJobService.getJob(jobId);
+        }
+        return job;
+    }
+}
@@ -0,0 +1,113 @@
+package net.naour.paymentservice.services;
+
+import net.naour.paymentservice.entities.MethodePaiement;
+import net.naour.paymentservice.entities.Payment;
+import net.naour.paymentservice.entities.PaymentStatus;
+import net.naour.paymentservice.entities.RevenueRollup;
+import net.naour.paymentservice.repositories.PaymentRepository;
+import net.naour.paymentservice.repositories.RevenueRollupRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doThrow;
+
+@SpringBootTest(properties = {"eureka.client.enabled=false", "spring.jpa.show-sql=false"})
+class RevenueServiceConcurrencyTests {
+
+    private static final LocalDate JOUR = LocalDate.of(2031, 3, 14);
+
+    @Autowired
+    private RevenueService revenueService;
+
+    @MockitoSpyBean
+    private RevenueRollupRepository rollupRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void concurrentFirstPaymentsOfTheDayAllLandInOneRollup() throws Exception {
+        int nombrePaiements = 200;
+        double montant = 10.0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        CountDownLatch depart = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < nombrePaiements; i++) {
+                futures.add(executor.submit(() -> {
+                    depart.await();
+                    transactionTemplate.executeWithoutResult(status -> revenueService.paiementReussi(payment(montant)));
+                    return null;
+                }));
+            }
+            depart.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        revenueService.attendreEcritures();
+
+        List<RevenueRollup> rollups = rollupRepository.findAll().stream()
+                .filter(rollup -> rollup.getJour().equals(JOUR)
+                        && rollup.getMethodePaiement() == MethodePaiement.VIREMENT_BANCAIRE)
+                .toList();
+        assertThat(rollups).hasSize(1);
+        assertThat(rollups.getFirst().getNombrePaiements()).isEqualTo(nombrePaiements);
+        assertThat(rollups.getFirst().getMontant()).isEqualTo(nombrePaiements * montant);
+        assertThat(revenueService.getDailyRevenue(JOUR, JOUR)).containsEntry(JOUR, nombrePaiements * montant);
+    }
+
+    @Test
+    void failedRollupWriteDoesNotRollBackPayment() throws Exception {
+        LocalDate jour = JOUR.plusDays(1);
+        doThrow(new DataAccessResourceFailureException("Base indisponible"))
+                .when(rollupRepository).increment(eq(jour), any(), anyDouble(), anyLong());
+
+        Payment payment = payment(25.0);
+        payment.setRentalId(801L);
+        payment.setClientId(81L);
+        payment.setStatut(PaymentStatus.REUSSI);
+        payment.setPaidAt(LocalDateTime.of(jour, LocalTime.NOON));
+        Payment saved = transactionTemplate.execute(status -> {
+            Payment enregistre = paymentRepository.save(payment);
+            revenueService.paiementReussi(enregistre);
+            return enregistre;
+        });
+        revenueService.attendreEcritures();
+
+        // Le compteur persisté est perdu, pas le paiement capturé ; rebuild() rattrape le compteur
+        assertThat(paymentRepository.findById(saved.getId())).map(Payment::getStatut).contains(PaymentStatus.REUSSI);
+        assertThat(rollupRepository.findAll()).noneMatch(rollup -> rollup.getJour().equals(jour));
+        revenueService.rebuild();
+        assertThat(rollupRepository.findAll()).filteredOn(rollup -> rollup.getJour().equals(jour))
+                .singleElement()
+                .satisfies(rollup -> assertThat(rollup.getMontant()).isEqualTo(25.0));
+    }
+
+    private static Payment payment(double montant) {
+        Payment payment = new Payment();
+        payment.setMontant(montant);
+        payment.setMethodePaiement(MethodePaiement.VIREMENT_BANCAIRE);
+        payment.setPaidAt(LocalDateTime.of(JOUR, LocalTime.NOON));
+        return payment;
+    }
+}
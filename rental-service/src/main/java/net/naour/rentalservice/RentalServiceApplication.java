@@ -9,12 +9,14 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.time.LocalDate;
 import java.util.List;
 
 @SpringBootApplication
 @EnableFeignClients(basePackages = "net.naour.rentalservice.feign")
+@EnableScheduling
 public class RentalServiceApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,17 @@
+package net.naour.rentalservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Entrée du journal des changements de car-service (type : CREATION, DISPONIBILITE, PRIX ou SUPPRESSION)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CarChange {
+    private Long seq;
+    private Long carId;
+    private String type;
+    private Boolean disponible;
+    private Double pricePerDay;
+}
@@ -0,0 +1,19 @@
+package net.naour.rentalservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Réponse de GET /api/cars/changes : next est le curseur suivant, head le dernier seq publié,
+// epoch la numérotation à laquelle ils appartiennent (change au redémarrage de car-service)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CarChangeBatch {
+    private String epoch;
+    private long next;
+    private long head;
+    private List<CarChange> changes;
+}
@@ -0,0 +1,19 @@
+package net.naour.rentalservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Page obtenue par curseur (keyset sur l'id).
+ * nextCursor est à passer dans le paramètre "after" de la requête suivante ; null quand il n'y a plus de résultats.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeysetPage<T> {
+    private List<T> content;
+    private Long nextCursor;
+}
@@ -0,0 +1,23 @@
+package net.naour.rentalservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.naour.rentalservice.entities.StatutReservation;
+
+import java.time.LocalDateTime;
+
+/**
+ * Changement de statut d'une réservation, poussé aux abonnés de GET /rentals/events.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RentalStatusEvent {
+    private Long rentalId;
+    private Long carId;
+    private Long clientId;
+    private StatutReservation ancienStatut;
+    private StatutReservation statut;
+    private LocalDateTime timestamp;
+}
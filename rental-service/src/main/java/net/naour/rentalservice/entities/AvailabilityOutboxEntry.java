@@ -0,0 +1,44 @@
+package net.naour.rentalservice.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Changement de disponibilité à propager vers car-service, écrit dans la même transaction
+ * que la réservation puis envoyé en arrière-plan par AvailabilityOutbox.
+ */
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "availability_outbox", indexes = {
+        @Index(name = "idx_outbox_car_id", columnList = "car_id"),
+        @Index(name = "idx_outbox_prochain_essai", columnList = "prochain_essai")
+})
+public class AvailabilityOutboxEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "car_id", nullable = false)
+    private Long carId;
+
+    @Column(nullable = false)
+    private boolean disponible;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private int tentatives;
+
+    @Column(name = "prochain_essai", nullable = false)
+    private LocalDateTime prochainEssai;
+}
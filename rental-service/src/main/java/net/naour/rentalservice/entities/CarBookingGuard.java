@@ -0,0 +1,29 @@
+package net.naour.rentalservice.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Une ligne par voiture, versionnée : chaque réservation incrémente la version,
+ * ce qui fait échouer en base une réservation concurrente pour la même voiture
+ * (autre instance du service) sans verrouiller la table des réservations.
+ */
+@Entity
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "car_booking_guards")
+public class CarBookingGuard {
+
+    @Id
+    @Column(name = "car_id")
+    private Long carId;
+
+    @Version
+    private Long version;
+
+    @Column(name = "nombre_reservations")
+    private long nombreReservations;
+}
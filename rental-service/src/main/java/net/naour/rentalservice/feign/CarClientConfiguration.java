@@ -0,0 +1,37 @@
+package net.naour.rentalservice.feign;
+
+import feign.Response;
+import feign.ResponseInterceptor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+
+// Configuration propre à CarRestClient (volontairement sans @Configuration pour ne pas s'appliquer aux autres
+// clients) : un 304 en réponse à une requête conditionnelle revient comme ResponseEntity sans corps,
+// au lieu de passer par le décodeur d'erreurs et de lever une FeignException
+public class CarClientConfiguration {
+
+    @Bean
+    public ResponseInterceptor notModifiedInterceptor() {
+        return (context, chain) -> {
+            Response response = context.response();
+            if (response.status() != HttpStatus.NOT_MODIFIED.value() || !isResponseEntity(context.returnType())) {
+                return chain.next(context);
+            }
+            HttpHeaders headers = new HttpHeaders();
+            response.headers().forEach((name, values) -> headers.addAll(name, new ArrayList<>(values)));
+            response.close();
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        };
+    }
+
+    private static boolean isResponseEntity(Type type) {
+        Type raw = type instanceof ParameterizedType parameterized ? parameterized.getRawType() : type;
+        return raw == ResponseEntity.class;
+    }
+}
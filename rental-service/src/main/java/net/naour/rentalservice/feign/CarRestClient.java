@@ -1,19 +1,31 @@
 package net.naour.rentalservice.feign;
 
 import net.naour.rentalservice.dto.Car;
+import net.naour.rentalservice.dto.CarChangeBatch;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.hateoas.PagedModel;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collection;
 import java.util.List;
 
-@FeignClient(name = "car-service" , url = "${car.service.url:http://localhost:8081}")
+@FeignClient(name = "car-service" , url = "${car.service.url:http://localhost:8081}",
+        configuration = CarClientConfiguration.class)
 public interface CarRestClient {
 
 
-    @GetMapping("/cars/{id}")
-    Car getCarById(@PathVariable("id") Long id);
+    // Voiture lue dans l'instantané de car-service. Avec l'ETag d'une réponse précédente, car-service
+    // répond 304 sans corps (ResponseEntity, voir CarClientConfiguration) si le catalogue n'a pas changé
+    @GetMapping("/api/cars/{id}")
+    ResponseEntity<Car> getCarById(@PathVariable("id") Long id,
+                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch);
+
+    // Récupérer plusieurs voitures en un seul appel (évite le N+1) ; l'ETag de la réponse sert de
+    // validateur pour chacune des voitures reçues
+    @GetMapping("/api/cars/batch")
+    ResponseEntity<List<Car>> getCarsByIds(@RequestParam("ids") Collection<Long> ids);
 
     @PutMapping("/cars/{id}")
     ResponseEntity<Car> updateCar(@PathVariable Long id, @RequestBody Car car);
@@ -24,6 +36,16 @@ public interface CarRestClient {
     @GetMapping("/cars/available")
     List<Car> getAvailableCars();
 
+    // Catalogue complet, non paginé. Avec l'ETag de la dernière réponse, car-service répond 304
+    // sans corps si le catalogue n'a pas changé
+    @GetMapping("/api/cars")
+    ResponseEntity<List<Car>> getCatalog(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch);
+
+    // Journal des changements postérieurs à since ; sans since, seulement la position courante (head)
+    @GetMapping("/api/cars/changes")
+    CarChangeBatch getChanges(@RequestParam(value = "since", required = false) Long since,
+                              @RequestParam("limit") int limit);
+
     @PatchMapping("/cars/{id}/availability")
     Car updateAvailability(@PathVariable("id") Long id, @RequestParam("disponible") boolean disponible);
 //PagedModel<T> est une classe fournie par Spring HATEOAS
@@ -4,10 +4,18 @@ import net.naour.rentalservice.dto.Client;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.Collection;
+import java.util.List;
 
 @FeignClient(name = "client-service", url = "${client.service.url:http://localhost:8082}")
 public interface ClientRestClient {
 
     @GetMapping("/clients/{id}")
     Client getClientById(@PathVariable("id") Long id);
+
+    // Récupérer plusieurs clients en un seul appel (évite le N+1)
+    @GetMapping("/clients/batch")
+    List<Client> getClientsByIds(@RequestParam("ids") Collection<Long> ids);
 }
\ No newline at end of file
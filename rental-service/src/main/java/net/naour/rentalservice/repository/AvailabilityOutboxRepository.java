@@ -0,0 +1,20 @@
+package net.naour.rentalservice.repository;
+
+import net.naour.rentalservice.entities.AvailabilityOutboxEntry;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@RepositoryRestResource(exported = false)
+public interface AvailabilityOutboxRepository extends JpaRepository<AvailabilityOutboxEntry, Long> {
+
+    // Changements dont la date de prochain essai est passée, dans l'ordre d'écriture
+    List<AvailabilityOutboxEntry> findByProchainEssaiLessThanEqualOrderByIdAsc(LocalDateTime now, Limit limit);
+
+    // Tous les changements en attente pour ces voitures, pour ne garder que le dernier
+    List<AvailabilityOutboxEntry> findByCarIdInOrderByIdAsc(Collection<Long> carIds);
+}
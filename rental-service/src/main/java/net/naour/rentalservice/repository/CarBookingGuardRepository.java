@@ -0,0 +1,9 @@
+package net.naour.rentalservice.repository;
+
+import net.naour.rentalservice.entities.CarBookingGuard;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+@RepositoryRestResource(exported = false)
+public interface CarBookingGuardRepository extends JpaRepository<CarBookingGuard, Long> {
+}
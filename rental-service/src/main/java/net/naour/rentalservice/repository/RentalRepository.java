@@ -1,14 +1,19 @@
 package net.naour.rentalservice.repository;
 
+import jakarta.persistence.QueryHint;
 import net.naour.rentalservice.entities.Rental;
 import net.naour.rentalservice.entities.StatutReservation;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RestResource;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface RentalRepository extends JpaRepository<Rental, Long> {
 
@@ -23,6 +28,9 @@ public interface RentalRepository extends JpaRepository<Rental, Long> {
     // Trouver les réservations par statut
     List<Rental> findByStatut(StatutReservation statut);
 
+    // Trouver les réservations ayant l'un des statuts donnés
+    List<Rental> findByStatutIn(Collection<StatutReservation> statuts);
+
     // Vérifier les conflits de réservation pour une voiture
     @Query("SELECT r FROM Rental r WHERE r.carId = :carId " +
             "AND r.statut IN ('EN_ATTENTE', 'CONFIRMEE', 'EN_COURS') " +
@@ -40,6 +48,42 @@ public interface RentalRepository extends JpaRepository<Rental, Long> {
             @Param("endDate") LocalDate endDate
     );
 
+    // Pagination par curseur : les réservations dont l'id est supérieur au curseur
+    @RestResource(exported = false)
+    List<Rental> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
+    @RestResource(exported = false)
+    List<Rental> findByStatutAndIdGreaterThanOrderByIdAsc(StatutReservation statut, Long afterId, Limit limit);
+
+    @RestResource(exported = false)
+    @Query("SELECT r FROM Rental r WHERE r.startDate >= :startDate AND r.endDate <= :endDate " +
+            "AND r.id > :afterId ORDER BY r.id")
+    List<Rental> findRentalsBetweenDatesAfter(
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate,
+            @Param("afterId") Long afterId,
+            Limit limit
+    );
+
+    // Lecture en flux (à consommer dans une transaction), sans charger toute la table en mémoire
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query("SELECT r FROM Rental r ORDER BY r.id")
+    Stream<Rental> streamAll();
+
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query("SELECT r FROM Rental r WHERE r.statut = :statut ORDER BY r.id")
+    Stream<Rental> streamByStatut(@Param("statut") StatutReservation statut);
+
+    @RestResource(exported = false)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query("SELECT r FROM Rental r WHERE r.startDate >= :startDate AND r.endDate <= :endDate ORDER BY r.id")
+    Stream<Rental> streamRentalsBetweenDates(
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate
+    );
+
     // Trouver les réservations actives
     @Query("SELECT r FROM Rental r WHERE r.statut IN ('CONFIRMEE', 'EN_COURS') " +
             "AND r.startDate <= :today AND r.endDate >= :today")
@@ -0,0 +1,199 @@
+package net.naour.rentalservice.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.naour.rentalservice.entities.Rental;
+import net.naour.rentalservice.entities.StatutReservation;
+import net.naour.rentalservice.repository.RentalRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index en mémoire des réservations bloquantes (EN_ATTENTE, CONFIRMEE, EN_COURS) par voiture.
+ * Permet de vérifier la disponibilité d'une voiture sans interroger la base.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AvailabilityIndex {
+
+    public static final Set<StatutReservation> STATUTS_BLOQUANTS =
+            EnumSet.of(StatutReservation.EN_ATTENTE, StatutReservation.CONFIRMEE, StatutReservation.EN_COURS);
+
+    private final RentalRepository rentalRepository;
+    private final Map<Long, CarIntervals> intervalsByCar = new ConcurrentHashMap<>();
+
+    // Reconstruire l'index depuis la base au démarrage
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        Map<Long, List<Rental>> rentalsByCar = new HashMap<>();
+        for (Rental rental : rentalRepository.findByStatutIn(STATUTS_BLOQUANTS)) {
+            rentalsByCar.computeIfAbsent(rental.getCarId(), k -> new ArrayList<>()).add(rental);
+        }
+
+        intervalsByCar.clear();
+        rentalsByCar.forEach((carId, rentals) -> intervalsByCar.put(carId, CarIntervals.of(rentals)));
+        log.info("Index de disponibilité reconstruit: {} voiture(s)", intervalsByCar.size());
+    }
+
+    public boolean isAvailable(Long carId, LocalDate dateDebut, LocalDate dateFin) {
+        CarIntervals intervals = intervalsByCar.get(carId);
+        return intervals == null || !intervals.overlaps(dateDebut.toEpochDay(), dateFin.toEpochDay());
+    }
+
+    // Voitures ayant au moins une réservation bloquante sur la période, en un seul parcours de l'index
+    public Set<Long> findBookedCarIds(LocalDate dateDebut, LocalDate dateFin) {
+        long debut = dateDebut.toEpochDay();
+        long fin = dateFin.toEpochDay();
+        Set<Long> booked = new HashSet<>();
+        intervalsByCar.forEach((carId, intervals) -> {
+            if (intervals.overlaps(debut, fin)) {
+                booked.add(carId);
+            }
+        });
+        return booked;
+    }
+
+    // Ajoute, déplace ou retire la réservation selon son statut actuel
+    public void update(Rental rental) {
+        afterCommit(() -> {
+            if (STATUTS_BLOQUANTS.contains(rental.getStatut())) {
+                intervalsByCar.compute(rental.getCarId(), (carId, current) ->
+                        (current == null ? CarIntervals.EMPTY : current).with(rental));
+            } else {
+                remove(rental.getCarId(), rental.getId());
+            }
+        });
+    }
+
+    public void remove(Rental rental) {
+        afterCommit(() -> remove(rental.getCarId(), rental.getId()));
+    }
+
+    private void remove(Long carId, Long rentalId) {
+        intervalsByCar.computeIfPresent(carId, (id, current) -> {
+            CarIntervals updated = current.without(rentalId);
+            return updated.isEmpty() ? null : updated;
+        });
+    }
+
+    // L'index ne doit refléter que des données validées en base
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Intervalles immuables d'une voiture, triés par date de début.
+     * maxFins[i] contient la plus grande date de fin parmi les intervalles 0..i,
+     * ce qui ramène la détection de chevauchement à une recherche dichotomique.
+     */
+    static final class CarIntervals {
+        static final CarIntervals EMPTY = new CarIntervals(new long[0], new long[0], new long[0]);
+
+        private final long[] rentalIds;
+        private final long[] debuts;
+        private final long[] fins;
+        private final long[] maxFins;
+
+        private CarIntervals(long[] rentalIds, long[] debuts, long[] fins) {
+            this.rentalIds = rentalIds;
+            this.debuts = debuts;
+            this.fins = fins;
+            this.maxFins = new long[fins.length];
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < fins.length; i++) {
+                max = Math.max(max, fins[i]);
+                maxFins[i] = max;
+            }
+        }
+
+        static CarIntervals of(List<Rental> rentals) {
+            CarIntervals intervals = EMPTY;
+            for (Rental rental : rentals) {
+                intervals = intervals.with(rental);
+            }
+            return intervals;
+        }
+
+        boolean isEmpty() {
+            return rentalIds.length == 0;
+        }
+
+        // Même règle que RentalRepository.findConflictingRentals : debut <= dateFin ET fin >= dateDebut
+        boolean overlaps(long dateDebut, long dateFin) {
+            int last = lastStartingOnOrBefore(dateFin);
+            return last >= 0 && maxFins[last] >= dateDebut;
+        }
+
+        CarIntervals with(Rental rental) {
+            CarIntervals base = without(rental.getId());
+            long debut = rental.getStartDate().toEpochDay();
+            int n = base.rentalIds.length;
+            int pos = base.lastStartingOnOrBefore(debut) + 1;
+
+            long[] ids = new long[n + 1];
+            long[] newDebuts = new long[n + 1];
+            long[] newFins = new long[n + 1];
+            System.arraycopy(base.rentalIds, 0, ids, 0, pos);
+            System.arraycopy(base.debuts, 0, newDebuts, 0, pos);
+            System.arraycopy(base.fins, 0, newFins, 0, pos);
+            ids[pos] = rental.getId();
+            newDebuts[pos] = debut;
+            newFins[pos] = rental.getEndDate().toEpochDay();
+            System.arraycopy(base.rentalIds, pos, ids, pos + 1, n - pos);
+            System.arraycopy(base.debuts, pos, newDebuts, pos + 1, n - pos);
+            System.arraycopy(base.fins, pos, newFins, pos + 1, n - pos);
+            return new CarIntervals(ids, newDebuts, newFins);
+        }
+
+        CarIntervals without(long rentalId) {
+            for (int i = 0; i < rentalIds.length; i++) {
+                if (rentalIds[i] == rentalId) {
+                    int n = rentalIds.length;
+                    long[] ids = new long[n - 1];
+                    long[] newDebuts = new long[n - 1];
+                    long[] newFins = new long[n - 1];
+                    System.arraycopy(rentalIds, 0, ids, 0, i);
+                    System.arraycopy(debuts, 0, newDebuts, 0, i);
+                    System.arraycopy(fins, 0, newFins, 0, i);
+                    System.arraycopy(rentalIds, i + 1, ids, i, n - i - 1);
+                    System.arraycopy(debuts, i + 1, newDebuts, i, n - i - 1);
+                    System.arraycopy(fins, i + 1, newFins, i, n - i - 1);
+                    return new CarIntervals(ids, newDebuts, newFins);
+                }
+            }
+            return this;
+        }
+
+        // Indice du dernier intervalle dont la date de début est <= jour, ou -1
+        private int lastStartingOnOrBefore(long jour) {
+            int low = 0;
+            int high = debuts.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (debuts[mid] <= jour) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+    }
+}
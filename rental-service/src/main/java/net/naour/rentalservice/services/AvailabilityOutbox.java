@@ -0,0 +1,109 @@
+package net.naour.rentalservice.services;
+
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import net.naour.rentalservice.entities.AvailabilityOutboxEntry;
+import net.naour.rentalservice.repository.AvailabilityOutboxRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Outbox des mises à jour de disponibilité : les changements sont enregistrés dans la transaction
+ * de la réservation, puis envoyés à car-service par lot, en ne gardant que le dernier état de
+ * chaque voiture, avec des nouvelles tentatives espacées exponentiellement en cas d'échec.
+ */
+@Component
+@Slf4j
+public class AvailabilityOutbox {
+    private final AvailabilityOutboxRepository outboxRepository;
+    private final ReferenceDataCache referenceDataCache;
+    private final int batchSize;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    public AvailabilityOutbox(AvailabilityOutboxRepository outboxRepository,
+                              ReferenceDataCache referenceDataCache,
+                              @Value("${rental.outbox.batch-size:100}") int batchSize,
+                              @Value("${rental.outbox.initial-backoff:1s}") Duration initialBackoff,
+                              @Value("${rental.outbox.max-backoff:5m}") Duration maxBackoff) {
+        this.outboxRepository = outboxRepository;
+        this.referenceDataCache = referenceDataCache;
+        this.batchSize = batchSize;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    // Doit être appelé dans la transaction qui modifie la réservation
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void enqueue(Long carId, boolean disponible) {
+        LocalDateTime now = LocalDateTime.now();
+        outboxRepository.save(AvailabilityOutboxEntry.builder()
+                .carId(carId)
+                .disponible(disponible)
+                .createdAt(now)
+                .prochainEssai(now)
+                .build());
+    }
+
+    @Scheduled(fixedDelayString = "${rental.outbox.poll-interval:1000}")
+    public void dispatch() {
+        LocalDateTime now = LocalDateTime.now();
+        Set<Long> carIds = outboxRepository.findByProchainEssaiLessThanEqualOrderByIdAsc(now, Limit.of(batchSize))
+                .stream()
+                .map(AvailabilityOutboxEntry::getCarId)
+                .collect(Collectors.toSet());
+        if (carIds.isEmpty()) {
+            return;
+        }
+
+        Map<Long, List<AvailabilityOutboxEntry>> entriesByCar = outboxRepository.findByCarIdInOrderByIdAsc(carIds)
+                .stream()
+                .collect(Collectors.groupingBy(AvailabilityOutboxEntry::getCarId, LinkedHashMap::new, Collectors.toList()));
+        entriesByCar.forEach((carId, entries) -> dispatch(carId, entries, now));
+    }
+
+    private void dispatch(Long carId, List<AvailabilityOutboxEntry> entries, LocalDateTime now) {
+        AvailabilityOutboxEntry latest = entries.get(entries.size() - 1);
+        // Le délai appartient à la voiture, pas à la dernière entrée : un nouveau changement (0 tentative,
+        // essai immédiat) ne relance pas les appels vers une voiture dont les envois échouent
+        int dejaTentees = entries.stream().mapToInt(AvailabilityOutboxEntry::getTentatives).max().orElse(0);
+        LocalDateTime essaiPrevu = entries.stream().map(AvailabilityOutboxEntry::getProchainEssai)
+                .max(LocalDateTime::compareTo).orElse(now);
+        if (essaiPrevu.isAfter(now)) {
+            return;
+        }
+
+        try {
+            // Seul le dernier état compte : les bascules intermédiaires ne sont pas envoyées
+            referenceDataCache.updateAvailability(carId, latest.isDisponible());
+            outboxRepository.deleteAllByIdInBatch(entries.stream().map(AvailabilityOutboxEntry::getId).toList());
+            log.info("Voiture {} marquée {} ({} changement(s) regroupé(s))",
+                    carId, latest.isDisponible() ? "disponible" : "non disponible", entries.size());
+        } catch (Exception e) {
+            int tentatives = dejaTentees + 1;
+            LocalDateTime prochainEssai = now.plus(backoff(tentatives));
+            entries.forEach(entry -> {
+                entry.setTentatives(tentatives);
+                entry.setProchainEssai(prochainEssai);
+            });
+            outboxRepository.saveAll(entries);
+            log.error("Erreur lors de la mise à jour de la disponibilité de la voiture {} (tentative {}, prochain essai {}): {}",
+                    carId, tentatives, prochainEssai, e.getMessage());
+        }
+    }
+
+    private Duration backoff(int tentatives) {
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(tentatives - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+}
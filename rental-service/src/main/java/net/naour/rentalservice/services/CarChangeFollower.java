@@ -0,0 +1,76 @@
+package net.naour.rentalservice.services;
+
+import feign.FeignException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.naour.rentalservice.dto.CarChange;
+import net.naour.rentalservice.dto.CarChangeBatch;
+import net.naour.rentalservice.feign.CarRestClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Suit le journal des changements de car-service pour retirer du cache les voitures modifiées
+ * (disponibilité, prix, suppression) dès le prochain passage, au lieu d'attendre leur expiration.
+ * Appels sans attente : le planificateur est partagé avec l'outbox de disponibilité.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CarChangeFollower {
+    private static final int CHANGES_PER_CALL = 500;
+
+    private final CarRestClient carRestClient;
+    private final ReferenceDataCache referenceDataCache;
+    // Dernier seq appliqué ; -1 tant que la position de car-service n'est pas connue
+    private long since = -1;
+    // Époque du journal à laquelle since appartient : un seq d'une autre époque ne désigne pas le même changement
+    private String epoch;
+
+    @Scheduled(fixedDelayString = "${rental.car-changes.poll-interval:2000}")
+    public void follow() {
+        try {
+            if (since < 0) {
+                CarChangeBatch position = carRestClient.getChanges(null, CHANGES_PER_CALL);
+                if (position != null) {
+                    // Ce qui a été mis en cache avant de connaître la position n'est pas couvert par le journal
+                    referenceDataCache.invalidateAllCars();
+                    since = position.getHead();
+                    epoch = position.getEpoch();
+                }
+                return;
+            }
+
+            CarChangeBatch batch;
+            do {
+                batch = carRestClient.getChanges(since, CHANGES_PER_CALL);
+                if (batch == null) {
+                    return;
+                }
+                if (!Objects.equals(batch.getEpoch(), epoch)) {
+                    // car-service a redémarré ou abandonné des changements : les seq ne se comparent plus
+                    log.info("Nouvelle époque du journal des changements de car-service, cache des voitures vidé");
+                    referenceDataCache.invalidateAllCars();
+                    since = batch.getHead();
+                    epoch = batch.getEpoch();
+                    return;
+                }
+                if (batch.getNext() < since) {
+                    log.info("Journal des changements de car-service réinitialisé, cache des voitures vidé");
+                    referenceDataCache.invalidateAllCars();
+                    since = batch.getNext();
+                    return;
+                }
+                referenceDataCache.invalidateCars(batch.getChanges().stream()
+                        .map(CarChange::getCarId)
+                        .collect(Collectors.toSet()));
+                since = batch.getNext();
+            } while (since < batch.getHead());
+        } catch (FeignException e) {
+            log.debug("Journal des changements de car-service indisponible: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package net.naour.rentalservice.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Verrous répartis par voiture : deux réservations pour la même voiture sont sérialisées,
+ * celles pour des voitures différentes s'exécutent en parallèle (sauf collision de bande).
+ */
+@Component
+public class CarLockStripes {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public CarLockStripes(@Value("${rental.lock.stripes:64}") int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public Lock lockFor(Long carId) {
+        int hash = Long.hashCode(carId);
+        hash ^= (hash >>> 16);
+        return stripes[hash & mask];
+    }
+}
@@ -0,0 +1,144 @@
+package net.naour.rentalservice.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import net.naour.rentalservice.dto.Car;
+import net.naour.rentalservice.dto.Client;
+import net.naour.rentalservice.feign.CarRestClient;
+import net.naour.rentalservice.feign.ClientRestClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Cache local (borné, avec expiration) devant CarRestClient et ClientRestClient.
+ * Les statistiques hit/miss sont publiées dans actuator sous les métriques cache.* (caches "cars" et "clients").
+ * Chaque voiture garde l'ETag de la réponse qui l'a apportée : une relecture exacte (getFreshCar) est une
+ * requête conditionnelle, à laquelle car-service répond 304 sans corps si rien n'a changé.
+ */
+@Component
+@Slf4j
+public class ReferenceDataCache {
+    private final CarRestClient carRestClient;
+    private final ClientRestClient clientRestClient;
+    private final Cache<Long, CachedCar> cars;
+    private final Cache<Long, Client> clients;
+    private volatile CachedCatalog catalog;
+
+    public ReferenceDataCache(CarRestClient carRestClient,
+                              ClientRestClient clientRestClient,
+                              MeterRegistry meterRegistry,
+                              @Value("${rental.cache.ttl:5m}") Duration ttl,
+                              @Value("${rental.cache.max-size:10000}") long maxSize) {
+        this.carRestClient = carRestClient;
+        this.clientRestClient = clientRestClient;
+        this.cars = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.clients = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cars, "cars");
+        CaffeineCacheMetrics.monitor(meterRegistry, clients, "clients");
+    }
+
+    public Car getCar(Long id) {
+        CachedCar cached = cars.get(id, this::loadCar);
+        return cached != null ? cached.car() : null;
+    }
+
+    // Toujours revalidé auprès de car-service : à utiliser quand la disponibilité doit être exacte
+    public Car getFreshCar(Long id) {
+        CachedCar cached = cars.getIfPresent(id);
+        ResponseEntity<Car> response = carRestClient.getCarById(id, cached != null ? cached.etag() : null);
+        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED) && cached != null) {
+            return cached.car();
+        }
+        Car car = response.getBody();
+        if (car != null) {
+            cars.put(id, new CachedCar(car, response.getHeaders().getETag()));
+        }
+        return car;
+    }
+
+    private CachedCar loadCar(Long id) {
+        ResponseEntity<Car> response = carRestClient.getCarById(id, null);
+        return response.getBody() != null ? new CachedCar(response.getBody(), response.getHeaders().getETag()) : null;
+    }
+
+    // Voitures signalées comme modifiées par le journal de car-service
+    public void invalidateCars(Collection<Long> ids) {
+        cars.invalidateAll(ids);
+    }
+
+    public void invalidateAllCars() {
+        cars.invalidateAll();
+    }
+
+    public Client getClient(Long id) {
+        return clients.get(id, clientRestClient::getClientById);
+    }
+
+    // Seuls les IDs absents du cache sont demandés, en un seul appel batch : il n'y a rien à revalider,
+    // mais l'ETag de la réponse est gardé pour les relectures exactes de ces voitures
+    public Map<Long, Car> getCars(Collection<Long> ids) {
+        Map<Long, CachedCar> found = cars.getAll(ids, missing -> {
+            ResponseEntity<List<Car>> response = carRestClient.getCarsByIds(new ArrayList<>(missing));
+            String etag = response.getHeaders().getETag();
+            List<Car> body = response.getBody() != null ? response.getBody() : List.of();
+            return body.stream().collect(Collectors.toMap(Car::getId, car -> new CachedCar(car, etag), (a, b) -> a));
+        });
+        return found.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().car()));
+    }
+
+    public Map<Long, Client> getClients(Collection<Long> ids) {
+        return clients.getAll(ids, missing -> clientRestClient.getClientsByIds(new ArrayList<>(missing)).stream()
+                .collect(Collectors.toMap(Client::getId, Function.identity(), (a, b) -> a)));
+    }
+
+    // Catalogue revalidé à chaque appel avec If-None-Match : s'il n'a pas changé, car-service
+    // répond 304 sans corps et la copie locale est réutilisée
+    public List<Car> getCatalog() {
+        CachedCatalog cached = catalog;
+        ResponseEntity<List<Car>> response = carRestClient.getCatalog(cached != null ? cached.etag() : null);
+        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED) && cached != null) {
+            return cached.cars();
+        }
+        List<Car> body = response.getBody() != null ? response.getBody() : List.of();
+        String etag = response.getHeaders().getETag();
+        if (etag != null) {
+            catalog = new CachedCatalog(etag, List.copyOf(body));
+        }
+        return body;
+    }
+
+    public Car updateAvailability(Long carId, boolean disponible) {
+        try {
+            return carRestClient.updateAvailability(carId, disponible);
+        } finally {
+            cars.invalidate(carId);
+        }
+    }
+
+    private record CachedCar(Car car, String etag) {
+    }
+
+    private record CachedCatalog(String etag, List<Car> cars) {
+    }
+}
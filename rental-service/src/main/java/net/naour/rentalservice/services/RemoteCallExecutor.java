@@ -0,0 +1,80 @@
+package net.naour.rentalservice.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Exécute en parallèle, sur des threads virtuels, des appels distants indépendants (Feign).
+ * Chaque appel à invokeAll est limité à rental.fanout.max-concurrency appels simultanés
+ * et à rental.fanout.timeout au total.
+ */
+@Component
+public class RemoteCallExecutor {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int maxConcurrency;
+    private final Duration timeout;
+
+    public RemoteCallExecutor(@Value("${rental.fanout.max-concurrency:8}") int maxConcurrency,
+                              @Value("${rental.fanout.timeout:3s}") Duration timeout) {
+        this.maxConcurrency = maxConcurrency;
+        this.timeout = timeout;
+    }
+
+    // Deux appels en parallèle : la latence est celle du plus lent, pas la somme des deux
+    @SuppressWarnings("unchecked")
+    public <A, B, R> R both(Supplier<A> first, Supplier<B> second,
+                            BiFunction<? super A, ? super B, ? extends R> combiner) {
+        List<Object> results = invokeAll(List.<Supplier<?>>of(first, second));
+        return combiner.apply((A) results.get(0), (B) results.get(1));
+    }
+
+    public <T> List<T> invokeAll(List<? extends Supplier<? extends T>> calls) {
+        Semaphore permits = new Semaphore(maxConcurrency);
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<Future<T>> futures = new ArrayList<>(calls.size());
+        try {
+            for (Supplier<? extends T> call : calls) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return call.get();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+            return results;
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Délai dépassé pour les appels distants (" + timeout.toMillis() + " ms)", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Appels distants interrompus", e);
+        } finally {
+            // Sans effet sur les appels terminés, interrompt ceux encore en cours après une erreur
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
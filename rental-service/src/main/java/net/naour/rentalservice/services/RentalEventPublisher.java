@@ -0,0 +1,42 @@
+package net.naour.rentalservice.services;
+
+import jakarta.annotation.PreDestroy;
+import net.naour.eventstream.SseBroadcaster;
+import net.naour.rentalservice.dto.RentalStatusEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+
+/**
+ * Diffusion SSE des changements de statut des réservations, à la place du polling de GET /rentals/{id}.
+ * Abonnés filtrés par client, tampon borné par abonné (rental.events.buffer-size) : voir SseBroadcaster.
+ */
+@Component
+public class RentalEventPublisher {
+    private final SseBroadcaster<RentalStatusEvent, Long> broadcaster;
+
+    public RentalEventPublisher(@Value("${rental.events.buffer-size:64}") int bufferSize,
+                                @Value("${rental.events.max-subscribers:1000}") int maxSubscribers,
+                                @Value("${rental.events.timeout:30m}") Duration timeout,
+                                @Value("${rental.events.heartbeat:15s}") Duration heartbeat) {
+        this.broadcaster = new SseBroadcaster<>("rental-status", RentalStatusEvent::getClientId,
+                bufferSize, maxSubscribers, timeout, heartbeat);
+    }
+
+    // clientId null : tous les événements
+    public SseEmitter subscribe(Long clientId) {
+        return broadcaster.subscribe(clientId);
+    }
+
+    // Publié après le commit : un abonné ne voit jamais un statut annulé par un rollback
+    public void publish(RentalStatusEvent event) {
+        broadcaster.publish(event);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        broadcaster.shutdown();
+    }
+}
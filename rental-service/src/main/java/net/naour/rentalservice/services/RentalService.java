@@ -1,30 +1,53 @@
 package net.naour.rentalservice.services;
 
 
+import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.naour.rentalservice.dto.Car;
 import net.naour.rentalservice.dto.Client;
+import net.naour.rentalservice.dto.KeysetPage;
 import net.naour.rentalservice.dto.RentalDTO;
+import net.naour.rentalservice.dto.RentalStatusEvent;
+import net.naour.rentalservice.entities.CarBookingGuard;
 import net.naour.rentalservice.entities.Rental;
 import net.naour.rentalservice.entities.StatutReservation;
-import net.naour.rentalservice.feign.CarRestClient;
-import net.naour.rentalservice.feign.ClientRestClient;
+import net.naour.rentalservice.repository.CarBookingGuardRepository;
 import net.naour.rentalservice.repository.RentalRepository;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j //@Slf4j est une annotation fournie par Lombok pour générer automatiquement un logger dans ta classe.
 public class RentalService {
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int STREAM_BATCH_SIZE = 500;
+
     private final RentalRepository rentalRepository;
-    private final CarRestClient carRestClient;
-    private final ClientRestClient clientRestClient;
+    private final AvailabilityIndex availabilityIndex;
+    private final ReferenceDataCache referenceDataCache;
+    private final CarLockStripes carLockStripes;
+    private final CarBookingGuardRepository carBookingGuardRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final RemoteCallExecutor remoteCallExecutor;
+    private final AvailabilityOutbox availabilityOutbox;
+    private final RentalEventPublisher eventPublisher;
 
     public List<Rental> getAllRentals() {
         return rentalRepository.findAll();
@@ -54,44 +77,153 @@ public class RentalService {
         return rentalRepository.findActiveRentals(LocalDate.now());
     }
 
+    // Pagination par curseur : "after" est le dernier id reçu (null pour la première page)
+    public KeysetPage<Rental> getRentalsPage(Long after, int size) {
+        return toPage(rentalRepository.findByIdGreaterThanOrderByIdAsc(cursor(after), limit(size)), size, Rental::getId);
+    }
+
+    public KeysetPage<Rental> getRentalsByStatutPage(StatutReservation statut, Long after, int size) {
+        return toPage(rentalRepository.findByStatutAndIdGreaterThanOrderByIdAsc(statut, cursor(after), limit(size)),
+                size, Rental::getId);
+    }
+
+    public KeysetPage<Rental> getRentalsBetweenDatesPage(LocalDate startDate, LocalDate endDate, Long after, int size) {
+        return toPage(rentalRepository.findRentalsBetweenDatesAfter(startDate, endDate, cursor(after), limit(size)),
+                size, Rental::getId);
+    }
+
+    public KeysetPage<RentalDTO> getReservationsWithDetailsPage(Long after, int size) {
+        List<Rental> rentals = rentalRepository.findByIdGreaterThanOrderByIdAsc(cursor(after), limit(size));
+        Long nextCursor = rentals.size() < size ? null : rentals.get(rentals.size() - 1).getId();
+        return new KeysetPage<>(enrichWithDetails(rentals), nextCursor);
+    }
+
+    // Lecture en flux : une ligne à la fois, détachée du contexte de persistance après usage,
+    // pour que la mémoire reste constante quelle que soit la taille de la table.
+    public void streamAllRentals(Consumer<Rental> sink) {
+        forEachRental(rentalRepository::streamAll, sink);
+    }
+
+    public void streamRentalsByStatut(StatutReservation statut, Consumer<Rental> sink) {
+        forEachRental(() -> rentalRepository.streamByStatut(statut), sink);
+    }
+
+    public void streamRentalsBetweenDates(LocalDate startDate, LocalDate endDate, Consumer<Rental> sink) {
+        forEachRental(() -> rentalRepository.streamRentalsBetweenDates(startDate, endDate), sink);
+    }
+
+    // Les détails sont enrichis par lots pour garder un appel batch par service distant
+    public void streamReservationsWithDetails(Consumer<RentalDTO> sink) {
+        List<Rental> lot = new ArrayList<>(STREAM_BATCH_SIZE);
+        forEachRental(rentalRepository::streamAll, rental -> {
+            lot.add(rental);
+            if (lot.size() == STREAM_BATCH_SIZE) {
+                enrichWithDetails(lot).forEach(sink);
+                lot.clear();
+            }
+        });
+        enrichWithDetails(lot).forEach(sink);
+    }
+
+    private void forEachRental(Supplier<Stream<Rental>> query, Consumer<Rental> sink) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> {
+            try (Stream<Rental> rentals = query.get()) {
+                rentals.forEach(rental -> {
+                    sink.accept(rental);
+                    entityManager.detach(rental);
+                });
+            }
+        });
+    }
 
-    @Transactional //@Transactional est une annotation de Spring (ou JPA)
-    // qui sert à gérer les transactions sur la base de données , en cas dechoue ROllback.
+    private static long cursor(Long after) {
+        return after != null ? after : 0L;
+    }
+
+    private static Limit limit(int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new RuntimeException("La taille de page doit être comprise entre 1 et " + MAX_PAGE_SIZE);
+        }
+        return Limit.of(size);
+    }
+
+    private static <T> KeysetPage<T> toPage(List<T> content, int size, Function<T, Long> idOf) {
+        Long nextCursor = content.size() < size ? null : idOf.apply(content.get(content.size() - 1));
+        return new KeysetPage<>(content, nextCursor);
+    }
+
+
+    // Pas de @Transactional ici : le verrou de la voiture doit couvrir toute la transaction,
+    // commit compris, pour qu'une réservation concurrente voie la précédente.
     public Rental createRental(Rental rental) {
         log.info("Création d'une réservation pour le client {} et la voiture {}",
                 rental.getClientId(), rental.getCarId());
 
-        // 3. Vérifier que la voiture existe et est disponible
-        Car car = carRestClient.getCarById(rental.getCarId());
-        if (car == null || !car.isDisponible()) {
-            throw new RuntimeException("La voiture n'est pas disponible");
-        }
+        Lock lock = carLockStripes.lockFor(rental.getCarId());
+        lock.lock();
+        try {
+            // 1. Rejeter si la période chevauche une réservation existante
+            if (!isCarAvailable(rental.getCarId(), rental.getStartDate(), rental.getEndDate())) {
+                throw new RuntimeException("La voiture est déjà réservée sur cette période");
+            }
+
+            // 3. Vérifier que la voiture existe et est disponible (jamais depuis le cache)
+            Car car = referenceDataCache.getFreshCar(rental.getCarId());
+            if (car == null || !car.isDisponible()) {
+                throw new RuntimeException("La voiture n'est pas disponible");
+            }
+
+
+            // 4. Calculer le montant total
+            rental.setMontantTotal(calculerMontant(rental.getNombreJours(), car.getPricePerDay()));
 
+            log.info("Montant calculé: {} EUR pour {} jour(s)", rental.getMontantTotal(),
+                    Math.max(1, rental.getNombreJours()));
 
-        // 4. Calculer le montant total
-        long nombreJours = rental.getNombreJours();
+            // 5. Sauvegarder la réservation
+            Rental savedrental;
+            try {
+                savedrental = transactionTemplate.execute(status -> reserver(rental));
+            } catch (ConcurrencyFailureException | DataIntegrityViolationException e) {
+                throw new RuntimeException("La voiture vient d'être réservée sur cette période", e);
+            }
+            availabilityIndex.update(savedrental);
+            return savedrental;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Montant arrondi au centime, facturé au minimum pour un jour
+    public static double calculerMontant(long nombreJours, double pricePerDay) {
         if (nombreJours <= 0) {
             nombreJours = 1;
         }
-        double montant = nombreJours * car.getPricePerDay();
-        rental.setMontantTotal(Math.round(montant * 100.0) / 100.0);
+        double montant = nombreJours * pricePerDay;
+        return Math.round(montant * 100.0) / 100.0;
+    }
 
-        log.info("Montant calculé: {} EUR pour {} jour(s)", rental.getMontantTotal(), nombreJours);
+    // Contrôle en base, protégé par la version de CarBookingGuard : si une autre instance
+    // réserve la même voiture en parallèle, l'une des deux transactions échoue au flush.
+    private Rental reserver(Rental rental) {
+        CarBookingGuard guard = carBookingGuardRepository.findById(rental.getCarId())
+                .orElseGet(() -> new CarBookingGuard(rental.getCarId(), null, 0));
 
-        // 5. Sauvegarder la réservation
-        Rental savedrental = rentalRepository.save(rental);
-
-        // 6. Marquer la voiture comme non disponible
-        try {
-            carRestClient.updateAvailability(rental.getCarId(), false);
-            log.info("Voiture {} marquée comme non disponible", rental.getCarId());
-        } catch (Exception e) {
-            log.error("Erreur lors de la mise à jour de la disponibilité: {}", e.getMessage());
+        if (!rentalRepository.findConflictingRentals(
+                rental.getCarId(), rental.getStartDate(), rental.getEndDate()).isEmpty()) {
+            throw new RuntimeException("La voiture est déjà réservée sur cette période");
         }
 
-        return savedrental;
+        Rental savedrental = rentalRepository.save(rental);
+        guard.setNombreReservations(guard.getNombreReservations() + 1);
+        carBookingGuardRepository.saveAndFlush(guard);
 
-        }
+        // 6. Marquer la voiture comme non disponible (envoyé à car-service après le commit)
+        availabilityOutbox.enqueue(rental.getCarId(), false);
+        return savedrental;
+    }
 
     @Transactional
     public Rental updateRentalStatut(Long id, StatutReservation statut) {
@@ -103,16 +235,16 @@ public class RentalService {
 
         // Si annulation ou terminée, remettre la voiture disponible
         if (statut == StatutReservation.ANNULEE || statut == StatutReservation.TERMINEE) {
-            try {
-                carRestClient.updateAvailability(reservation.getCarId(), true);
-                log.info("Voiture {} remise disponible", reservation.getCarId());
-            } catch (Exception e) {
-                log.error("Erreur lors de la remise à disponible: {}", e.getMessage());
-            }
+            availabilityOutbox.enqueue(reservation.getCarId(), true);
         }
 
+        StatutReservation ancienStatut = reservation.getStatut();
         reservation.setStatut(statut);
-        return rentalRepository.save(reservation);
+        Rental saved = rentalRepository.save(reservation);
+        availabilityIndex.update(saved);
+        eventPublisher.publish(new RentalStatusEvent(saved.getId(), saved.getCarId(), saved.getClientId(),
+                ancienStatut, statut, LocalDateTime.now()));
+        return saved;
     }
 
 
@@ -122,32 +254,88 @@ public class RentalService {
                 .orElseThrow(() -> new RuntimeException("Réservation non trouvée avec l'ID: " + id));
 
         // Remettre la voiture disponible
-        try {
-            carRestClient.updateAvailability(reservation.getCarId(), true);
-            log.info("Voiture {} remise disponible après suppression", reservation.getCarId());
-        } catch (Exception e) {
-            log.error("Erreur lors de la remise à disponible: {}", e.getMessage());
-        }
+        availabilityOutbox.enqueue(reservation.getCarId(), true);
 
         rentalRepository.deleteById(id);
+        availabilityIndex.remove(reservation);
     }
 
 
+    // Répond depuis l'index en mémoire, sans requête en base
     public boolean isCarAvailable(Long carId, LocalDate dateDebut, LocalDate dateFin) {
-        List<Rental> conflits = rentalRepository.findConflictingRentals(
-                carId, dateDebut, dateFin
-        );
-        return conflits.isEmpty();
+        if (dateDebut == null || dateFin == null) {
+            // Même résultat que l'ancienne requête JPQL, qui ne trouvait aucun conflit sans dates
+            return true;
+        }
+        return availabilityIndex.isAvailable(carId, dateDebut, dateFin);
     }
 
 
+    // Voitures libres sur toute la période : un parcours de l'index + un seul appel au catalogue.
+    // Même règle que createRental : une voiture non disponible n'est pas réservable, elle n'est donc pas proposée.
+    public List<Car> findAvailableCars(LocalDate dateDebut, LocalDate dateFin, String categorie,
+                                       Double minPrice, Double maxPrice) {
+        if (dateFin.isBefore(dateDebut)) {
+            throw new RuntimeException("La date de fin doit être postérieure à la date de début");
+        }
+
+        Set<Long> booked = availabilityIndex.findBookedCarIds(dateDebut, dateFin);
+        return referenceDataCache.getCatalog().stream()
+                .filter(Car::isDisponible)
+                .filter(car -> !booked.contains(car.getId()))
+                .filter(car -> categorie == null || categorie.equalsIgnoreCase(car.getCategorie()))
+                .filter(car -> minPrice == null || car.getPricePerDay() >= minPrice)
+                .filter(car -> maxPrice == null || car.getPricePerDay() <= maxPrice)
+                .collect(Collectors.toList());
+    }
+
     public RentalDTO getReservationDetails(Long id) {
         Rental rental = rentalRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Réservation non trouvée"));
 
-        Client client = clientRestClient.getClientById(rental.getClientId());
-        Car car = carRestClient.getCarById(rental.getCarId());
+        // Client et voiture récupérés en parallèle
+        return remoteCallExecutor.both(
+                () -> referenceDataCache.getClient(rental.getClientId()),
+                () -> referenceDataCache.getCar(rental.getCarId()),
+                (client, car) -> toDetails(rental, client, car));
+    }
+
+    public List<RentalDTO> getAllReservationsWithDetails() {
+        return enrichWithDetails(rentalRepository.findAll());
+    }
+
+    // Enrichit une liste de réservations avec un seul appel par service distant :
+    // les IDs sont dédoublonnés, récupérés en bloc puis joints en mémoire.
+    private List<RentalDTO> enrichWithDetails(List<Rental> rentals) {
+        if (rentals.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Set<Long> clientIds = rentals.stream().map(Rental::getClientId).collect(Collectors.toSet());
+        Set<Long> carIds = rentals.stream().map(Rental::getCarId).collect(Collectors.toSet());
+
+        return remoteCallExecutor.both(
+                () -> referenceDataCache.getClients(clientIds),
+                () -> referenceDataCache.getCars(carIds),
+                (clients, cars) -> join(rentals, clients, cars));
+    }
 
+    private List<RentalDTO> join(List<Rental> rentals, Map<Long, Client> clients, Map<Long, Car> cars) {
+        List<RentalDTO> details = new ArrayList<>(rentals.size());
+        for (Rental rental : rentals) {
+            Client client = clients.get(rental.getClientId());
+            Car car = cars.get(rental.getCarId());
+            if (client == null || car == null) {
+                log.error("Erreur lors de la récupération des détails: client {} ou voiture {} introuvable pour la réservation {}",
+                        rental.getClientId(), rental.getCarId(), rental.getId());
+                continue;
+            }
+            details.add(toDetails(rental, client, car));
+        }
+        return details;
+    }
+
+    private RentalDTO toDetails(Rental rental, Client client, Car car) {
         return RentalDTO.builder()
                 .id(rental.getId())
                 .clientId(rental.getClientId())
@@ -165,19 +353,4 @@ public class RentalService {
                 .statut(rental.getStatut())
                 .build();
     }
-
-    public List<RentalDTO> getAllReservationsWithDetails() {
-        return rentalRepository.findAll().stream()
-                .map(reservation -> {
-                    try {
-                        return getReservationDetails(reservation.getId());
-                    } catch (Exception e) {
-                        log.error("Erreur lors de la récupération des détails: {}", e.getMessage());
-                        return null;
-                    }
-                })
-                .filter(dto -> dto != null)
-                .collect(Collectors.toList());
-    }
 }
-
@@ -3,36 +3,79 @@ package net.naour.rentalservice.web;
 import lombok.RequiredArgsConstructor;
 import net.naour.rentalservice.dto.Car;
 import net.naour.rentalservice.dto.CarStatus;
+import net.naour.rentalservice.dto.KeysetPage;
 import net.naour.rentalservice.dto.RentalDTO;
 import net.naour.rentalservice.entities.Rental;
 import net.naour.rentalservice.entities.StatutReservation;
 import net.naour.rentalservice.feign.CarRestClient;
 import net.naour.rentalservice.repository.RentalRepository;
+import net.naour.rentalservice.services.RentalEventPublisher;
 import net.naour.rentalservice.services.RentalService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/rentals")
 @RequiredArgsConstructor
 @CrossOrigin(origins = "*")
 public class RentalController {
+    private static final int NDJSON_FLUSH_EVERY = 100;
+
     private final RentalService rentalService;
+    private final ObjectMapper objectMapper;
+    private final RentalEventPublisher rentalEventPublisher;
 
     @GetMapping
     public List<Rental> getAllRentals() {
         return rentalService.getAllRentals();
     }
 
+    // Pagination par curseur : /rentals?size=50 puis /rentals?size=50&after={nextCursor}
+    @GetMapping(params = "size")
+    public KeysetPage<Rental> getRentalsPage(@RequestParam(required = false) Long after, @RequestParam int size) {
+        return rentalService.getRentalsPage(after, size);
+    }
+
+    // Flux NDJSON : une réservation par ligne, envoyée au fil de la lecture
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamRentals() {
+        return this.<Rental>ndjson(rentalService::streamAllRentals);
+    }
+
     @GetMapping("/details")
     public List<RentalDTO> getAllRentalsWithDetails() {
         return rentalService.getAllReservationsWithDetails();
     }
 
+    @GetMapping(value = "/details", params = "size")
+    public KeysetPage<RentalDTO> getRentalsWithDetailsPage(@RequestParam(required = false) Long after,
+                                                           @RequestParam int size) {
+        return rentalService.getReservationsWithDetailsPage(after, size);
+    }
+
+    @GetMapping("/details/stream")
+    public ResponseEntity<StreamingResponseBody> streamRentalsWithDetails() {
+        return this.<RentalDTO>ndjson(rentalService::streamReservationsWithDetails);
+    }
+
+    // Flux SSE des changements de statut (optionnellement d'un seul client), à la place du polling
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeToStatusEvents(@RequestParam(required = false) Long clientId) {
+        return rentalEventPublisher.subscribe(clientId);
+    }
+
     @GetMapping("/{id}")
     public Rental getRentalById(@PathVariable Long id) {
         return rentalService.getRentalById(id).orElseThrow();
@@ -58,6 +101,18 @@ public class RentalController {
         return rentalService.getRentalsByStatut(statut);
     }
 
+    @GetMapping(value = "/statut/{statut}", params = "size")
+    public KeysetPage<Rental> getRentalsByStatutPage(@PathVariable StatutReservation statut,
+                                                     @RequestParam(required = false) Long after,
+                                                     @RequestParam int size) {
+        return rentalService.getRentalsByStatutPage(statut, after, size);
+    }
+
+    @GetMapping("/statut/{statut}/stream")
+    public ResponseEntity<StreamingResponseBody> streamRentalsByStatut(@PathVariable StatutReservation statut) {
+        return this.<Rental>ndjson(sink -> rentalService.streamRentalsByStatut(statut, sink));
+    }
+
     @GetMapping("/active")
     public List<Rental> getActiveRentals() {
         return rentalService.getActiveRentals();
@@ -71,6 +126,22 @@ public class RentalController {
         return rentalService.getRentalsBetweenDates(startDate, endDate);
     }
 
+    @GetMapping(value = "/period", params = "size")
+    public KeysetPage<Rental> getRentalsByPeriodPage(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) Long after,
+            @RequestParam int size) {
+        return rentalService.getRentalsBetweenDatesPage(startDate, endDate, after, size);
+    }
+
+    @GetMapping("/period/stream")
+    public ResponseEntity<StreamingResponseBody> streamRentalsByPeriod(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        return this.<Rental>ndjson(sink -> rentalService.streamRentalsBetweenDates(startDate, endDate, sink));
+    }
+
     @PostMapping
     public Rental createRental(@RequestBody Rental rental) {
         return rentalService.createRental(rental);
@@ -101,9 +172,35 @@ public class RentalController {
         return rentalService.isCarAvailable(carId, start, end);
 
     }
-}
-
-
-
 
+    @GetMapping("/available-cars")
+    public List<Car> getAvailableCars(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String categorie,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice) {
+        return rentalService.findAvailableCars(startDate, endDate, categorie, minPrice, maxPrice);
+    }
 
+    // Écrit chaque élément produit sur une ligne JSON, en vidant le tampon régulièrement
+    // pour que le client reçoive les premières lignes avant la fin de la requête.
+    private <T> ResponseEntity<StreamingResponseBody> ndjson(Consumer<Consumer<T>> producer) {
+        StreamingResponseBody body = out -> {
+            int[] count = {0};
+            producer.accept(item -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(item));
+                    out.write('\n');
+                    if (++count[0] % NDJSON_FLUSH_EVERY == 0) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+}
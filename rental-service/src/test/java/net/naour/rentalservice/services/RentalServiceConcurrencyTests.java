@@ -0,0 +1,118 @@
+package net.naour.rentalservice.services;
+
+import net.naour.rentalservice.dto.Car;
+import net.naour.rentalservice.entities.Rental;
+import net.naour.rentalservice.entities.StatutReservation;
+import net.naour.rentalservice.feign.CarRestClient;
+import net.naour.rentalservice.feign.ClientRestClient;
+import net.naour.rentalservice.repository.RentalRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntToLongFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {"eureka.client.enabled=false", "spring.jpa.show-sql=false"})
+class RentalServiceConcurrencyTests {
+
+    private static final LocalDate DEBUT = LocalDate.of(2030, 7, 1);
+    private static final LocalDate FIN = LocalDate.of(2030, 7, 10);
+
+    @Autowired
+    private RentalService rentalService;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @MockitoBean
+    private CarRestClient carRestClient;
+
+    @MockitoBean
+    private ClientRestClient clientRestClient;
+
+    @BeforeEach
+    void setUp() {
+        when(carRestClient.getCarById(anyLong(), any())).thenAnswer(invocation -> {
+            Car car = new Car();
+            car.setId(invocation.getArgument(0));
+            car.setPricePerDay(50.0);
+            car.setDisponible(true);
+            return ResponseEntity.ok(car);
+        });
+    }
+
+    @Test
+    void onlyOneOfManyConcurrentBookingsPerCarSucceeds() throws Exception {
+        int nombreVoitures = 20;
+        int nombreReservations = 400;
+
+        AtomicInteger succes = new AtomicInteger();
+        AtomicInteger rejets = new AtomicInteger();
+        runConcurrently(nombreReservations, i -> 1_000L + (i % nombreVoitures), succes, rejets);
+
+        assertThat(succes.get()).isEqualTo(nombreVoitures);
+        assertThat(rejets.get()).isEqualTo(nombreReservations - nombreVoitures);
+        for (long carId = 1_000L; carId < 1_000L + nombreVoitures; carId++) {
+            assertThat(rentalRepository.findConflictingRentals(carId, DEBUT, FIN)).hasSize(1);
+        }
+    }
+
+    @Test
+    void concurrentBookingsForDifferentCarsAllSucceed() throws Exception {
+        int nombreReservations = 300;
+
+        AtomicInteger succes = new AtomicInteger();
+        AtomicInteger rejets = new AtomicInteger();
+        runConcurrently(nombreReservations, i -> 2_000L + i, succes, rejets);
+
+        assertThat(succes.get()).isEqualTo(nombreReservations);
+        assertThat(rejets.get()).isZero();
+    }
+
+    private void runConcurrently(int nombreReservations, IntToLongFunction carIdFor,
+                                 AtomicInteger succes, AtomicInteger rejets) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(64);
+        CountDownLatch depart = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < nombreReservations; i++) {
+                long carId = carIdFor.applyAsLong(i);
+                futures.add(executor.submit(() -> {
+                    depart.await();
+                    try {
+                        rentalService.createRental(Rental.builder()
+                                .clientId(1L)
+                                .carId(carId)
+                                .startDate(DEBUT)
+                                .endDate(FIN)
+                                .statut(StatutReservation.EN_ATTENTE)
+                                .build());
+                        succes.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        rejets.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            depart.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}